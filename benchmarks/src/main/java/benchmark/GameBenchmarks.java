@@ -0,0 +1,104 @@
+package benchmark;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.InvalidMoveException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the ChessGame rule checks on an opening, a middlegame and an
+ * endgame position
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmarks {
+    @Param({"OPENING", "MIDDLEGAME", "ENDGAME"})
+    private Positions position;
+
+    private ChessGame game;
+    private ChessMove[] cycle;
+    private ChessPosition[] whitePieces;
+
+    @Setup
+    public void setUp() {
+        game = position.newGame();
+        cycle = position.cycle();
+        whitePieces = game.getBoard().getPiecePositions(ChessGame.TeamColor.WHITE).toArray(new ChessPosition[0]);
+    }
+
+    /**
+     * Starts each iteration on a fresh game. makeMove records every move in the
+     * game's history, so without this the history would keep growing over the
+     * whole run and the later iterations would be measuring its upkeep.
+     */
+    @Setup(Level.Iteration)
+    public void newGame() {
+        game = position.newGame();
+    }
+
+    /**
+     * Plays the position's four move cycle, so the board is back where it
+     * started when the invocation ends. The moves still go into the history,
+     * which {@link #newGame()} clears before the next iteration.
+     */
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public void makeMove() throws InvalidMoveException {
+        for (ChessMove move : cycle) {
+            game.makeMove(move);
+        }
+    }
+
+    /**
+     * Asks for the valid moves of every white piece, as a client does when
+     * highlighting each piece in turn. The first piece works out the status
+     * for the position and the rest read it from the cache.
+     */
+    @Benchmark
+    public void validMoves(Blackhole blackhole) {
+        forgetStatus();
+        for (ChessPosition square : whitePieces) {
+            blackhole.consume(game.validMoves(square));
+        }
+    }
+
+    @Benchmark
+    public boolean isInCheck() {
+        return game.isInCheck(ChessGame.TeamColor.WHITE);
+    }
+
+    @Benchmark
+    public boolean isInCheckmate() {
+        forgetStatus();
+        return game.isInCheckmate(ChessGame.TeamColor.WHITE);
+    }
+
+    /**
+     * Drops the game's cached status, so each invocation works the position out
+     * again rather than only measuring the cache. Setting the board clears it
+     * without touching the position.
+     */
+    private void forgetStatus() {
+        game.setBoard(game.getBoard());
+    }
+}
@@ -0,0 +1,54 @@
+package benchmark;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.InvalidFenException;
+
+/**
+ * The positions the benchmarks run on, one from each phase of a game, with a
+ * cycle of four moves for each that ends back in the starting position so a
+ * benchmark can play moves forever without drifting.
+ */
+public enum Positions {
+    OPENING("r1bqkbnr/1ppp1ppp/p1n5/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 0 4",
+            "b1c3", "g8f6", "c3b1", "f6g8"),
+    MIDDLEGAME("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "f3g3", "e7d8", "g3f3", "d8e7"),
+    ENDGAME("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "b4c4", "h5h6", "c4b4", "h6h5");
+
+    private final String fen;
+    private final String[] cycle;
+
+    Positions(String fen, String... cycle) {
+        this.fen = fen;
+        this.cycle = cycle;
+    }
+
+    /**
+     * @return a new game in this position
+     */
+    public ChessGame newGame() {
+        try {
+            return ChessGame.fromFen(fen);
+        } catch (InvalidFenException e) {
+            throw new IllegalStateException("Bad benchmark position " + name(), e);
+        }
+    }
+
+    /**
+     * @return four moves, alternating white and black, that return to this position
+     */
+    public ChessMove[] cycle() {
+        ChessMove[] moves = new ChessMove[cycle.length];
+        for (int i = 0; i < cycle.length; i++) {
+            moves[i] = new ChessMove(parseSquare(cycle[i], 0), parseSquare(cycle[i], 2), null);
+        }
+        return moves;
+    }
+
+    private static ChessPosition parseSquare(String move, int index) {
+        return ChessPosition.of(move.charAt(index + 1) - '0', move.charAt(index) - 'a' + 1);
+    }
+}
@@ -0,0 +1,56 @@
+package benchmark;
+
+import chess.ChessGame;
+import chess.search.Engine;
+import chess.search.SearchLimits;
+import chess.search.SearchResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for the engine to search each position to a fixed depth, with one
+ * thread and with helper threads. The transposition table is cleared before
+ * every search so each one starts cold.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmarks {
+    @Param({"OPENING", "MIDDLEGAME", "ENDGAME"})
+    private Positions position;
+
+    @Param({"5"})
+    private int depth;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private Engine engine;
+    private ChessGame game;
+
+    @Setup
+    public void setUp() {
+        engine = new Engine(16, threads);
+        game = position.newGame();
+    }
+
+    @Benchmark
+    public SearchResult search() {
+        engine.clear();
+        return engine.search(game, SearchLimits.depth(depth));
+    }
+}
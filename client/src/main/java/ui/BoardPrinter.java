@@ -2,10 +2,6 @@ package ui;
 
 import chess.*;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
-
 import static ui.EscapeSequences.*;
 
 
@@ -33,8 +29,7 @@ public class BoardPrinter {
         return SET_BG_COLOR_DARKER_GREY;
     }
 
-    public String getBackgroundColorHighlight(int row, int col, Set<ChessPosition> positions, boolean white,
-                                              boolean pieceWhite) {
+    public String getBackgroundColorHighlight(int row, int col, long targets, boolean white, boolean pieceWhite) {
         if (row == 0 || row == 9 || col == 0 || col == 9) {
             return SET_BG_COLOR_BLACK;
         }
@@ -53,10 +48,10 @@ public class BoardPrinter {
             darkBG = SET_BG_COLOR_BLUE;
             lightBG = SET_BG_COLOR_DARK_BLUE;
         }
-        if (white && positions.contains(new ChessPosition(9-row, col))) {
+        if (white && (targets & 1L << Bitboards.square(9-row, col)) != 0) {
             return lightAndDark ? darkBG : lightBG;
         }
-        else if (!white && positions.contains(new ChessPosition(row, 9-col))) {
+        else if (!white && (targets & 1L << Bitboards.square(row, 9-col)) != 0) {
             return !lightAndDark ? darkBG : lightBG;
         }
 
@@ -83,7 +78,7 @@ public class BoardPrinter {
         if (row == 0 || row == 9) {
             return SET_TEXT_COLOR_WHITE + " " + letters[col] + " " + RESET_TEXT_COLOR;
         }
-        ChessPiece pieceInSpot = board.getPiece(new ChessPosition(9-row, col));
+        ChessPiece pieceInSpot = board.getPiece(ChessPosition.of(9-row, col));
         if (pieceInSpot != null) {
             StringBuilder pieceString = new StringBuilder();
             if (pieceInSpot.getTeamColor() == ChessGame.TeamColor.WHITE) {
@@ -142,11 +137,7 @@ public class BoardPrinter {
         if (color == ChessGame.TeamColor.WHITE) {
             pieceWhite = true;
         }
-        Collection<ChessMove> validMoves = game.validMoves(position);
-        Set<ChessPosition> validSquares = new HashSet<>();
-        for (ChessMove move : validMoves) {
-            validSquares.add(move.getEndPosition());
-        }
+        long validSquares = game.validMoveTargets(position);
         StringBuilder printBoard = new StringBuilder();
         for (int row = 0; row < 10; row++) {
             for (int col = 0; col < 10; col++) {
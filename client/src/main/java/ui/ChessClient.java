@@ -106,8 +106,9 @@ public class ChessClient {
                         Lists the games that you can join
                     create [game-name]
                         Creates a new game under the name that you specify (no spaces)
-                    join [game-id] [color]
+                    join [game-id] [color] [optional: engine]
                         Join a game by specifying the game number
+                        Add "engine" to play against the computer
                     help
                         Shows a list of commands you can do
                     quit
@@ -308,9 +309,13 @@ public class ChessClient {
         } catch (Exception e) {
             return e.getMessage();
         }
-        if (params.length != 2) {
-            return "Expected: join [game-id] [color]";
+        if (params.length != 2 && params.length != 3) {
+            return "Expected: join [game-id] [color] [optional: engine]";
+        }
+        if (params.length == 3 && !params[2].equalsIgnoreCase("engine")) {
+            return "Please input `engine` to play against the computer, or leave it off";
         }
+        boolean versusEngine = params.length == 3;
         listGames(); // To update the list of Game IDs, in case they created a game and then run this command
         Integer gameID;
         try {
@@ -331,10 +336,10 @@ public class ChessClient {
             JoinGameResult result = server.joinGame(request);
             if (playerColor.equals("WHITE")) {
                 webSocketFacade = new WebSocketFacade(serverUrl, new GameNotificationHandler(clientName), true);
-                webSocketFacade.sendConnectMessage(authToken, inGameID, ConnectCommand.JoinType.WHITE);
+                webSocketFacade.sendConnectMessage(authToken, inGameID, ConnectCommand.JoinType.WHITE, versusEngine);
             } else {
                 webSocketFacade = new WebSocketFacade(serverUrl, new GameNotificationHandler(clientName), false);
-                webSocketFacade.sendConnectMessage(authToken, inGameID, ConnectCommand.JoinType.BLACK);
+                webSocketFacade.sendConnectMessage(authToken, inGameID, ConnectCommand.JoinType.BLACK, versusEngine);
             }
         } catch (ServerFacadeException e) {
             if (e.getId() == 400) {
@@ -30,7 +30,7 @@ public class MoveMaker {
             throw new Exception("Looks like you didn't format that position quite right.\nPlease try again");
         }
 
-        return new ChessPosition(row, col);
+        return ChessPosition.of(row, col);
     }
 
     public ChessMove makeMove(String... params) throws Exception {
@@ -106,8 +106,13 @@ public class WebSocketFacade extends Endpoint {
 
     public void sendConnectMessage(String authToken, Integer gameID, ConnectCommand.JoinType joinType)
             throws WebSocketException {
+        sendConnectMessage(authToken, gameID, joinType, false);
+    }
+
+    public void sendConnectMessage(String authToken, Integer gameID, ConnectCommand.JoinType joinType,
+                                   boolean versusEngine) throws WebSocketException {
         try {
-            var action = new ConnectCommand(authToken, gameID, joinType);
+            var action = new ConnectCommand(authToken, gameID, joinType, versusEngine);
             this.session.getBasicRemote().sendText(new Gson().toJson(action));
         } catch (IOException ex) {
             throw new WebsocketException("Error with sending websocket message");
@@ -161,7 +166,7 @@ public class WebSocketFacade extends Endpoint {
         } catch (IndexOutOfBoundsException | NumberFormatException e) {
             throw new Exception("Looks like you didn't format that position quite right.\nPlease try again");
         }
-        return printer.highlight(gameStorage.getGame(), clientWhite, new ChessPosition(row, col));
+        return printer.highlight(gameStorage.getGame(), clientWhite, ChessPosition.of(row, col));
     }
 
     private void updateStoredGame(ChessGame game) {
@@ -0,0 +1,216 @@
+package engine;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.book.OpeningBook;
+import chess.search.Engine;
+import chess.search.SearchLimits;
+import chess.search.SearchResult;
+import chess.tablebase.Tablebase;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Thinks up the engine's moves for every game the server is playing against a
+ * person, on a fixed pool of threads shared fairly between all of them.
+ * <p>
+ * A search is cut into slices of at most sliceMillis. After each slice, unless
+ * the game has used up its time for the move, the search goes to the back of
+ * the pool's queue behind every other game's waiting slice, so one long think
+ * can't hold a thread while other games wait. Each game keeps its own engine,
+ * and with it its transposition table. Only the first slice of a move ages the
+ * table; the later ones continue the same search, so their early iterations
+ * come almost straight out of the table and the time goes on the deeper ones.
+ * <p>
+ * While the game is still in the opening book, the engine plays a book move
+ * straight away instead of searching, and once few enough pieces are left its
+ * engines look the position up in the tablebase.
+ */
+public class EngineScheduler {
+    public static final String BOT_USERNAME = "engine";
+
+    // Small, since there is one table for every game the engine is playing
+    private static final int TABLE_MEGABYTES = 1;
+
+    private final ExecutorService workers;
+    private final long moveTimeMillis;
+    private final long sliceMillis;
+    private final OpeningBook book;
+    private final Tablebase tablebase;
+    private final SplittableRandom random = new SplittableRandom();
+    private final Map<Integer, Engine> engines = new ConcurrentHashMap<>();
+    private final Map<Integer, MoveRequest> requests = new ConcurrentHashMap<>();
+
+    /**
+     * @param threads how many searches run at once
+     * @param moveTimeMillis how long the engine may think about each move
+     * @param sliceMillis how long one search runs before other games get a turn
+     * @param book the opening book to play from, or null to always search
+     * @param tablebase the endgame tablebase to look positions up in, or null for none
+     */
+    public EngineScheduler(int threads, long moveTimeMillis, long sliceMillis, OpeningBook book,
+                           Tablebase tablebase) {
+        this.moveTimeMillis = moveTimeMillis;
+        this.sliceMillis = sliceMillis;
+        this.book = book;
+        this.tablebase = tablebase;
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "engine-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts thinking about the engine's move in a game. A search already
+     * running for the same position is left to finish, so asking again, as
+     * each player who connects does, never holds the move back; a search for
+     * any other position is replaced.
+     *
+     * @param gameID the game to move in
+     * @param game the game, which is copied so it can keep being used
+     * @param onMove called on a scheduler thread with the move to play, or never
+     * if the search is cancelled first; not used if a search for the position
+     * is already running
+     */
+    public void requestMove(int gameID, ChessGame game, Consumer<ChessMove> onMove) {
+        long positionKey = game.getZobristKey();
+        MoveRequest pending = requests.get(gameID);
+        if (pending != null && pending.positionKey == positionKey) {
+            return;
+        }
+        Engine engine = engines.computeIfAbsent(gameID, id -> newEngine());
+        MoveRequest request = new MoveRequest(gameID, game.copy(), positionKey, engine, onMove);
+        MoveRequest replaced = requests.put(gameID, request);
+        if (replaced != null) {
+            replaced.cancel();
+        }
+        ChessMove bookMove = pickBookMove(request.game);
+        if (bookMove != null) {
+            playBookMove(request, bookMove);
+        } else {
+            schedule(request);
+        }
+    }
+
+    private Engine newEngine() {
+        Engine engine = new Engine(TABLE_MEGABYTES);
+        engine.setTablebase(tablebase);
+        return engine;
+    }
+
+    private ChessMove pickBookMove(ChessGame game) {
+        if (book == null) {
+            return null;
+        }
+        // SplittableRandom isn't thread safe, and moves are requested from the server's threads
+        synchronized (random) {
+            return book.pickMove(game, random);
+        }
+    }
+
+    private void playBookMove(MoveRequest request, ChessMove move) {
+        try {
+            // Still answered on a scheduler thread, as a searched move would be
+            workers.execute(() -> {
+                if (requests.remove(request.gameID, request)) {
+                    request.onMove.accept(move);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The scheduler has been shut down, so nobody is waiting for the move
+        }
+    }
+
+    /**
+     * Stops thinking about a game's move and lets go of its engine, for when the
+     * game ends or the player leaves. A player who leaves may never come back,
+     * so the engine isn't kept; one is made again if its move is asked for.
+     *
+     * @param gameID the game to stop searching
+     */
+    public void cancel(int gameID) {
+        MoveRequest request = requests.remove(gameID);
+        if (request != null) {
+            request.cancel();
+        }
+        engines.remove(gameID);
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private void schedule(MoveRequest request) {
+        try {
+            workers.execute(() -> runSlice(request));
+        } catch (RejectedExecutionException e) {
+            // The scheduler has been shut down, so nobody is waiting for the move
+        }
+    }
+
+    private void runSlice(MoveRequest request) {
+        SearchResult result;
+        // A search this one replaced may still be finishing a slice on the same engine
+        synchronized (request.engine) {
+            if (request.cancelled) {
+                return;
+            }
+            long slice = Math.min(sliceMillis, moveTimeMillis - request.usedMillis);
+            // The table is aged once for the move, not once a slice
+            result = request.usedMillis == 0
+                    ? request.engine.search(request.game, SearchLimits.time(slice))
+                    : request.engine.continueSearch(request.game, SearchLimits.time(slice));
+        }
+        request.usedMillis += Math.max(1, result.timeMillis());
+        if (request.cancelled || result.bestMove() == null) {
+            return;
+        }
+
+        boolean mateFound = Engine.isMateScore(result.score());
+        // A result found without visiting a position came from the tablebase, and won't change
+        boolean lookedUp = result.nodes() == 0;
+        if (request.usedMillis < moveTimeMillis && !mateFound && !lookedUp && result.depth() < Engine.MAX_DEPTH) {
+            schedule(request);
+        } else if (requests.remove(request.gameID, request)) {
+            request.onMove.accept(result.bestMove());
+        }
+    }
+
+    /**
+     * One game's search for its next move. Only one scheduler thread works on
+     * it at a time, but it is cancelled from the server's threads.
+     */
+    private static final class MoveRequest {
+        private final int gameID;
+        private final ChessGame game;
+        // Kept apart from the game, which the search changes as it goes
+        private final long positionKey;
+        private final Engine engine;
+        private final Consumer<ChessMove> onMove;
+        private volatile boolean cancelled;
+        private long usedMillis;
+
+        private MoveRequest(int gameID, ChessGame game, long positionKey, Engine engine,
+                            Consumer<ChessMove> onMove) {
+            this.gameID = gameID;
+            this.game = game;
+            this.positionKey = positionKey;
+            this.engine = engine;
+            this.onMove = onMove;
+        }
+
+        private void cancel() {
+            cancelled = true;
+            engine.stop();
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package handler;
 
 import chess.*;
+import chess.book.OpeningBook;
+import chess.tablebase.Tablebase;
 import com.google.gson.Gson;
 import dataaccess.AuthDAO;
 import dataaccess.DataAccessException;
 import dataaccess.GameDAO;
+import engine.EngineScheduler;
 import io.javalin.websocket.WsContext;
 import io.javalin.websocket.WsMessageContext;
 import model.AuthData;
@@ -20,20 +23,32 @@ import websocket.messages.NotificationMessage;
 import websocket.messages.ServerMessage;
 
 import javax.xml.crypto.Data;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class WebSocketHandler {
     private final AuthService authService;
     private final GameDAO gameDAO = new GameDAO();
-    private Map<Integer, ArrayList<WsContext>> gamers = new HashMap<>();
+    // Engine moves arrive on scheduler threads, so these are shared with them
+    private final Map<Integer, List<WsContext>> gamers = new ConcurrentHashMap<>();
+    private final Map<Integer, Object> gameLocks = new ConcurrentHashMap<>();
+    private final OpeningBook book = loadBook();
+    private final Tablebase tablebase = loadTablebase();
+    private final EngineScheduler engineScheduler = new EngineScheduler(Runtime.getRuntime().availableProcessors(),
+            1000, 50, book, tablebase);
     private final String[] letters = {null, "a", "b", "c", "d", "e", "f", "g", "h"};
 
     public WebSocketHandler() throws DataAccessException {
         authService = new AuthService(new AuthDAO());
     }
 
-    public void handleConnect(WsContext ctx, String authToken, Integer gameID, ConnectCommand.JoinType joinType) {
+    public void handleConnect(WsContext ctx, String authToken, Integer gameID, ConnectCommand.JoinType joinType,
+                              boolean versusEngine) {
         AuthData senderAuthData = verifyAuth(authToken);
         if (senderAuthData != null) {
             GameData game = null;
@@ -46,10 +61,13 @@ public class WebSocketHandler {
                 sendErrorMessage(ctx, "Error: invalid game ID");
                 return;
             }
-            if (!gamers.containsKey(gameID)) {
-                gamers.put(gameID, new ArrayList<>());
+            if (versusEngine && joinType != ConnectCommand.JoinType.OBSERVER) {
+                game = seatEngine(ctx, gameID, joinType, senderAuthData.username());
+                if (game == null) {
+                    return;
+                }
             }
-            gamers.get(gameID).add(ctx);
+            gamers.computeIfAbsent(gameID, id -> new CopyOnWriteArrayList<>()).add(ctx);
 
             for (WsContext storedCTX : gamers.get(gameID)) {
                 if (!storedCTX.equals(ctx)) {
@@ -59,13 +77,67 @@ public class WebSocketHandler {
                 }
             }
             sendLoadGame(gameID, ctx);
+            // The engine may be waiting on its turn from before everyone left
+            requestEngineMoveIfDue(game);
 
         } else {
             sendErrorMessage(ctx, "Error: unable to authenticate user");
         }
     }
 
+    /**
+     * Puts the engine in the seat across from the player who is connecting. The
+     * seat is checked and taken under the game's lock, on the game as it is
+     * saved then, so two connections can't both take it.
+     *
+     * @param username the player connecting, who must already hold the joinType seat
+     * @return the game with the engine seated, or null if the player isn't in
+     * that seat or someone else has the other one
+     */
+    private GameData seatEngine(WsContext ctx, int gameID, ConnectCommand.JoinType joinType, String username) {
+        synchronized (gameLock(gameID)) {
+            GameData gameData;
+            try {
+                gameData = gameDAO.findGameDataByID(gameID);
+            } catch (DataAccessException e) {
+                sendErrorMessage(ctx, "Error: we couldn't find that game in our database");
+                return null;
+            }
+            boolean engineWhite = joinType == ConnectCommand.JoinType.BLACK;
+            String playerSeat = engineWhite ? gameData.blackUsername() : gameData.whiteUsername();
+            if (!Objects.equals(playerSeat, username)) {
+                sendErrorMessage(ctx, "Error: you can only play the engine in a game you've joined");
+                return null;
+            }
+            String seated = engineWhite ? gameData.whiteUsername() : gameData.blackUsername();
+            if (EngineScheduler.BOT_USERNAME.equals(seated)) {
+                return gameData;
+            }
+            if (seated != null) {
+                sendErrorMessage(ctx, "Error: someone is already playing the other color");
+                return null;
+            }
+            GameData newGameData = new GameData(gameData.gameID(),
+                    engineWhite ? EngineScheduler.BOT_USERNAME : gameData.whiteUsername(),
+                    engineWhite ? gameData.blackUsername() : EngineScheduler.BOT_USERNAME,
+                    gameData.gameName(), gameData.game());
+            try {
+                gameDAO.updateGame(gameData, newGameData);
+            } catch (DataAccessException e) {
+                sendErrorMessage(ctx, "Error: we couldn't access the database");
+                return null;
+            }
+            return newGameData;
+        }
+    }
+
     public void handleMakeMove(WsContext ctx, String authToken, Integer gameID, ChessMove move) {
+        synchronized (gameLock(gameID)) {
+            makeMove(ctx, authToken, gameID, move);
+        }
+    }
+
+    private void makeMove(WsContext ctx, String authToken, Integer gameID, ChessMove move) {
         AuthData senderAuthData = verifyAuth(authToken);
         if (senderAuthData == null) {
             sendErrorMessage(ctx, "Error: unable to authenticate user");
@@ -96,13 +168,72 @@ public class WebSocketHandler {
             sendErrorMessage(ctx, "Error: This game is over");
             return;
         }
+        boolean bookMove = isBookMove(game, move);
         try {
             game.makeMove(move);
         } catch (InvalidMoveException e) {
             sendErrorMessage(ctx, "Error: Looks like that move isn't valid");
             return;
         }
+        finishMove(ctx, gameData, game, move, bookMove, senderAuthData.username(), pieceInSpot.getTeamColor());
+    }
+
+    /**
+     * Plays the move the engine picked, unless the game moved on while it was
+     * thinking
+     *
+     * @param positionKey the Zobrist key of the position the engine searched
+     */
+    private void playEngineMove(int gameID, long positionKey, ChessMove move) {
+        synchronized (gameLock(gameID)) {
+            GameData gameData;
+            try {
+                gameData = gameDAO.findGameDataByID(gameID);
+            } catch (DataAccessException e) {
+                sendErrorMessage(null, "Error: we couldn't find that game in our database");
+                return;
+            }
+            ChessGame game = gameData.game();
+            if (game.isGameOver() || game.getZobristKey() != positionKey) {
+                return;
+            }
+            ChessGame.TeamColor engineColor = game.getTeamTurn();
+            boolean bookMove = isBookMove(game, move);
+            try {
+                game.makeMove(move);
+            } catch (InvalidMoveException e) {
+                sendErrorMessage(null, "Error: the engine picked a move that isn't valid");
+                return;
+            }
+            finishMove(null, gameData, game, move, bookMove, EngineScheduler.BOT_USERNAME, engineColor);
+        }
+    }
+
+    /**
+     * Asks the engine for a move if it is seated in a game and it is its turn
+     */
+    private void requestEngineMoveIfDue(GameData gameData) {
+        ChessGame game = gameData.game();
+        String usernameToMove = game.getTeamTurn() == ChessGame.TeamColor.WHITE
+                ? gameData.whiteUsername() : gameData.blackUsername();
+        if (game.isGameOver() || !EngineScheduler.BOT_USERNAME.equals(usernameToMove)) {
+            return;
+        }
+        int gameID = gameData.gameID();
+        long positionKey = game.getZobristKey();
+        engineScheduler.requestMove(gameID, game, move -> playEngineMove(gameID, positionKey, move));
+    }
 
+    /**
+     * Saves a move that has been made, tells everyone in the game about it, and
+     * hands the turn to the engine if it plays next
+     *
+     * @param ctx the connection of the player who moved, or null for the engine
+     * @param bookMove whether the opening book has the move, so it can be pointed out
+     */
+    private void finishMove(WsContext ctx, GameData gameData, ChessGame game, ChessMove move, boolean bookMove,
+                            String moverUsername, ChessGame.TeamColor moverColor) {
+        int gameID = gameData.gameID();
         GameData newGameData = new GameData(gameData.gameID(), gameData.whiteUsername(), gameData.blackUsername(),
                 gameData.gameName(), game);
         try {
@@ -112,33 +243,34 @@ public class WebSocketHandler {
             return;
         }
 
-        for (WsContext storedCTX : gamers.get(gameID)) {
-            sendLoadGame(gameID, storedCTX);
+        // Everyone gets the same compact copy of the position right after the move. The
+        // move history only goes out when a player connects, in sendLoadGame.
+        ChessGame loadedGame = ChessGame.fromSnapshot(game.snapshot());
+        String loadGameJson = new Gson().toJson(new LoadGameMessage(ServerMessage.ServerMessageType.LOAD_GAME,
+                loadedGame));
+        for (WsContext storedCTX : connections(gameID)) {
+            storedCTX.send(loadGameJson);
             if (!storedCTX.equals(ctx)) {
                 ServerMessage notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION,
-                        senderAuthData.username() + getMoveText(move));
+                        moverUsername + getMoveText(move) + (bookMove ? " (book move)" : ""));
                 String notificationJson = new Gson().toJson(notification);
                 storedCTX.send(notificationJson);
             }
         }
 
-        ChessGame.TeamColor enemyColor;
         String enemyUsername;
-        assert pieceInSpot != null;
-        if (pieceInSpot.getTeamColor() == ChessGame.TeamColor.WHITE) {
-            enemyColor = ChessGame.TeamColor.BLACK;
+        if (moverColor == ChessGame.TeamColor.WHITE) {
             enemyUsername = gameData.blackUsername();
         } else {
-            enemyColor = ChessGame.TeamColor.WHITE;
             enemyUsername = gameData.whiteUsername();
         }
 
-        boolean isInCheckmate = game.isInCheckmate(enemyColor);
-        boolean isInCheck = !isInCheckmate && game.isInCheck(enemyColor);
-        boolean isInStalemate = !isInCheckmate && !isInCheck && game.isInStalemate(enemyColor);
+        // The enemy is now the team to move, so one status covers checkmate, check and every draw
+        GameStatus status = game.getStatus(tablebase);
+        boolean isInCheck = status.isInCheck();
 
-        if (isInCheckmate || isInCheck || isInStalemate) {
-            if (isInCheckmate || isInStalemate) {
+        if (status.isGameOver() || isInCheck) {
+            if (status.isGameOver()) {
                 game.gameIsOver();
                 GameData newerGameData = new GameData(newGameData.gameID(), newGameData.whiteUsername(),
                         newGameData.blackUsername(), newGameData.gameName(), game);
@@ -149,16 +281,27 @@ public class WebSocketHandler {
                     return;
                 }
             }
-            for (WsContext storedCTX : gamers.get(gameID)) {
-                ServerMessage notification = getServerMessage(isInCheckmate, isInCheck, senderAuthData, enemyUsername);
+            for (WsContext storedCTX : connections(gameID)) {
+                ServerMessage notification = getServerMessage(status.getResult(), moverUsername, enemyUsername);
                 String notificationJson = new Gson().toJson(notification);
                 storedCTX.send(notificationJson);
             }
+            if (status.isGameOver()) {
+                engineScheduler.cancel(gameID);
+                return;
+            }
         }
-
+        requestEngineMoveIfDue(newGameData);
     }
 
     public void handleLeave(WsContext ctx, String authToken, Integer gameID) {
+        // Engine moves are saved from scheduler threads, so the game mustn't change between reading and writing it
+        synchronized (gameLock(gameID)) {
+            leave(ctx, authToken, gameID);
+        }
+    }
+
+    private void leave(WsContext ctx, String authToken, Integer gameID) {
         AuthData senderAuthData = verifyAuth(authToken);
         if (senderAuthData == null) {
             sendErrorMessage(ctx, "Error: unable to authenticate user");
@@ -172,6 +315,11 @@ public class WebSocketHandler {
             return;
         }
 
+        if (Objects.equals(senderAuthData.username(), gameData.whiteUsername())
+                || Objects.equals(senderAuthData.username(), gameData.blackUsername())) {
+            // Nobody is left to play against, so stop thinking; it starts again when someone connects
+            engineScheduler.cancel(gameID);
+        }
         if (Objects.equals(senderAuthData.username(), gameData.whiteUsername())) {
             GameData newGameData = new GameData(gameData.gameID(), null, gameData.blackUsername(),
                     gameData.gameName(), gameData.game());
@@ -192,9 +340,9 @@ public class WebSocketHandler {
             }
         }
 
-        gamers.get(gameID).remove(ctx);
+        connections(gameID).remove(ctx);
 
-        for (WsContext storedCTX : gamers.get(gameID)) {
+        for (WsContext storedCTX : connections(gameID)) {
             ServerMessage notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION,
                     senderAuthData.username() + " left the game");
             String notificationJson = new Gson().toJson(notification);
@@ -203,6 +351,12 @@ public class WebSocketHandler {
     }
 
     public void handleResign(WsMessageContext ctx, String authToken, Integer gameID) {
+        synchronized (gameLock(gameID)) {
+            resign(ctx, authToken, gameID);
+        }
+    }
+
+    private void resign(WsMessageContext ctx, String authToken, Integer gameID) {
         AuthData senderAuthData = verifyAuth(authToken);
         if (senderAuthData == null) {
             sendErrorMessage(ctx, "Error: unable to authenticate user");
@@ -226,6 +380,7 @@ public class WebSocketHandler {
             return;
         }
         game.gameIsOver();
+        engineScheduler.cancel(gameID);
 
         GameData newGameData = new GameData(gameData.gameID(), gameData.whiteUsername(), gameData.blackUsername(),
                 gameData.gameName(), game);
@@ -236,7 +391,7 @@ public class WebSocketHandler {
             return;
         }
 
-        for (WsContext storedCTX : gamers.get(gameID)) {
+        for (WsContext storedCTX : connections(gameID)) {
             ServerMessage notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION,
                     senderAuthData.username() + " resigned from the game");
             String notificationJson = new Gson().toJson(notification);
@@ -244,20 +399,18 @@ public class WebSocketHandler {
         }
     }
 
-    private static ServerMessage getServerMessage(boolean isInCheckmate, boolean isInCheck, AuthData senderAuthData,
+    private static ServerMessage getServerMessage(GameStatus.Result result, String moverUsername,
                                                   String enemyUsername) {
-        ServerMessage notification;
-        if (isInCheckmate) {
-            notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION,
-                    senderAuthData.username() + " put " + enemyUsername + " in checkmate!");
-        } else if (isInCheck) {
-            notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION,
-                    senderAuthData.username() + " put " + enemyUsername + " in check!");
-        } else {
-            notification = new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION,
-                    senderAuthData.username() + " put " + enemyUsername + " in stalemate!");
-        }
-        return notification;
+        String message = switch (result) {
+            case CHECKMATE -> moverUsername + " put " + enemyUsername + " in checkmate!";
+            case STALEMATE -> moverUsername + " put " + enemyUsername + " in stalemate!";
+            case REPETITION -> "The game is a draw by threefold repetition!";
+            case FIFTY_MOVES -> "The game is a draw by the fifty-move rule!";
+            case INSUFFICIENT_MATERIAL -> "The game is a draw, neither side has enough pieces left to checkmate!";
+            case DEAD_POSITION -> "The game is a draw, neither side can win from here with best play!";
+            case IN_PROGRESS -> moverUsername + " put " + enemyUsername + " in check!";
+        };
+        return new NotificationMessage(ServerMessage.ServerMessageType.NOTIFICATION, message);
     }
 
     private String getMoveText(ChessMove move) {
@@ -304,6 +457,10 @@ public class WebSocketHandler {
         return senderAuthData;
     }
 
+    /**
+     * Sends a player who is connecting the game as saved, move history included.
+     * Later moves are sent as position snapshots without it.
+     */
     private void sendLoadGame(Integer gameID, WsContext ctx) {
         GameData gameData = null;
         try {
@@ -319,7 +476,65 @@ public class WebSocketHandler {
         ctx.send(responseText);
     }
 
+    public void stop() {
+        engineScheduler.shutdown();
+    }
+
+    private boolean isBookMove(ChessGame game, ChessMove move) {
+        return book != null && book.isBookMove(game, move);
+    }
+
+    /**
+     * Opens the opening book named by the chess.book system property, or
+     * book.bin in the working directory. The server runs without one if there
+     * is no such file.
+     */
+    private static OpeningBook loadBook() {
+        Path path = Path.of(System.getProperty("chess.book", "book.bin"));
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            return OpeningBook.open(path);
+        } catch (IOException e) {
+            System.err.println("Failed to open the opening book: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens the endgame tablebase in the directory named by the
+     * chess.tablebases system property, or tablebases in the working directory.
+     * The server runs without one if the directory doesn't exist; the tables
+     * are made with TablebaseGenerator.
+     */
+    private static Tablebase loadTablebase() {
+        Path directory = Path.of(System.getProperty("chess.tablebases", "tablebases"));
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        try {
+            return Tablebase.open(directory);
+        } catch (IOException e) {
+            System.err.println("Failed to open the tablebase: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Object gameLock(int gameID) {
+        return gameLocks.computeIfAbsent(gameID, id -> new Object());
+    }
+
+    private List<WsContext> connections(int gameID) {
+        return gamers.getOrDefault(gameID, List.of());
+    }
+
     private void sendErrorMessage(WsContext ctx, String message) {
+        if (ctx == null) {
+            // Errors from the engine's moves have no player to go to
+            System.err.println(message);
+            return;
+        }
         ErrorMessage response = new ErrorMessage(ServerMessage.ServerMessageType.ERROR,
                 message);
         String responseText = new Gson().toJson(response);
@@ -79,7 +79,7 @@ public class Server {
     private void runCommand(WsMessageContext ctx, UserGameCommand command) {
         switch (command.getCommandType()) {
             case CONNECT -> wsHandler.handleConnect(ctx, command.getAuthToken(), command.getGameID(),
-                    ((ConnectCommand) command).getJoinType());
+                    ((ConnectCommand) command).getJoinType(), ((ConnectCommand) command).isVersusEngine());
             case MAKE_MOVE -> wsHandler.handleMakeMove(ctx, command.getAuthToken(), command.getGameID(),
                     ((MakeMoveCommand) command).getMove());
             case LEAVE -> wsHandler.handleLeave(ctx, command.getAuthToken(), command.getGameID());
@@ -116,5 +116,6 @@ public class Server {
 
     public void stop() {
         javalin.stop();
+        wsHandler.stop();
     }
 }
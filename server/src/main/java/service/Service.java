@@ -1,6 +1,7 @@
 package service;
 
 import dataaccess.DataAccessException;
+import engine.EngineScheduler;
 import model.AuthData;
 import model.GameData;
 import model.*;
@@ -29,6 +30,10 @@ public class Service {
         if (username == null || password == null || email == null) {
             throw new MissingDataException("Error: bad request");
         }
+        if (username.equals(EngineScheduler.BOT_USERNAME)) {
+            // The engine sits in games under this name, so nobody else can have it
+            throw new AlreadyTakenException("Error: already taken");
+        }
         UserData userData = new UserData(username, password, email);
         userService.addUser(userData);
         AuthData userAuth = authService.createAuth(username);
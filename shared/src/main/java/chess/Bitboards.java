@@ -0,0 +1,140 @@
+package chess;
+
+/**
+ * Square indexing and precomputed attack masks for the bitboard representation
+ * used by ChessBoard.
+ * <p>
+ * Squares are numbered 0-63 starting at a1 (row 1, column 1) and going across
+ * each row, so square = (row - 1) * 8 + (column - 1). Bit n of a bitboard is set
+ * when square n is in the set.
+ */
+public final class Bitboards {
+    public static final long FILE_A = 0x0101010101010101L;
+    public static final long FILE_H = FILE_A << 7;
+    public static final long RANK_1 = 0xFFL;
+    public static final long RANK_2 = RANK_1 << 8;
+    public static final long RANK_3 = RANK_1 << 16;
+    public static final long RANK_6 = RANK_1 << 40;
+    public static final long RANK_7 = RANK_1 << 48;
+    public static final long RANK_8 = RANK_1 << 56;
+
+    private static final long[] KNIGHT_ATTACKS = new long[64];
+    private static final long[] KING_ATTACKS = new long[64];
+    private static final long[][] PAWN_ATTACKS = new long[2][64];
+    private static final long[][] BETWEEN = new long[64][64];
+    private static final long[][] LINE = new long[64][64];
+
+    static {
+        int[][] knightSteps = {{2, 1}, {2, -1}, {-2, 1}, {-2, -1}, {1, 2}, {1, -2}, {-1, 2}, {-1, -2}};
+        int[][] kingSteps = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}, {1, 0}, {0, 1}, {-1, 0}, {0, -1}};
+        int[][] whitePawnSteps = {{1, 1}, {1, -1}};
+        int[][] blackPawnSteps = {{-1, 1}, {-1, -1}};
+        for (int square = 0; square < 64; square++) {
+            int row = square >>> 3;
+            int col = square & 7;
+            KNIGHT_ATTACKS[square] = stepMask(row, col, knightSteps);
+            KING_ATTACKS[square] = stepMask(row, col, kingSteps);
+            PAWN_ATTACKS[ChessGame.TeamColor.WHITE.ordinal()][square] = stepMask(row, col, whitePawnSteps);
+            PAWN_ATTACKS[ChessGame.TeamColor.BLACK.ordinal()][square] = stepMask(row, col, blackPawnSteps);
+        }
+        for (int from = 0; from < 64; from++) {
+            for (int to = 0; to < 64; to++) {
+                if (from == to) {
+                    continue;
+                }
+                long ends = (1L << from) | (1L << to);
+                if ((SlidingAttacks.rookAttacks(from, 0L) & (1L << to)) != 0) {
+                    BETWEEN[from][to] = SlidingAttacks.rookAttacks(from, 1L << to)
+                            & SlidingAttacks.rookAttacks(to, 1L << from);
+                    LINE[from][to] = (SlidingAttacks.rookAttacks(from, 0L)
+                            & SlidingAttacks.rookAttacks(to, 0L)) | ends;
+                } else if ((SlidingAttacks.bishopAttacks(from, 0L) & (1L << to)) != 0) {
+                    BETWEEN[from][to] = SlidingAttacks.bishopAttacks(from, 1L << to)
+                            & SlidingAttacks.bishopAttacks(to, 1L << from);
+                    LINE[from][to] = (SlidingAttacks.bishopAttacks(from, 0L)
+                            & SlidingAttacks.bishopAttacks(to, 0L)) | ends;
+                }
+            }
+        }
+    }
+
+    private Bitboards() { }
+
+    private static long stepMask(int row, int col, int[][] steps) {
+        long mask = 0L;
+        for (int[] step : steps) {
+            int newRow = row + step[0];
+            int newCol = col + step[1];
+            if (newRow >= 0 && newRow < 8 && newCol >= 0 && newCol < 8) {
+                mask |= 1L << (newRow * 8 + newCol);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return the square index of a 1-based row and column
+     */
+    public static int square(int row, int col) {
+        return (row - 1) * 8 + (col - 1);
+    }
+
+    /**
+     * @return the square index of a position
+     */
+    public static int square(ChessPosition position) {
+        return square(position.getRow(), position.getColumn());
+    }
+
+    /**
+     * @return the 1-based row of a square index
+     */
+    public static int row(int square) {
+        return (square >>> 3) + 1;
+    }
+
+    /**
+     * @return the 1-based column of a square index
+     */
+    public static int column(int square) {
+        return (square & 7) + 1;
+    }
+
+    /**
+     * @return the index into a twelve entry per-piece table for a color and type
+     */
+    public static int pieceIndex(ChessGame.TeamColor color, ChessPiece.PieceType type) {
+        return color.ordinal() * 6 + type.ordinal();
+    }
+
+    public static long knightAttacks(int square) {
+        return KNIGHT_ATTACKS[square];
+    }
+
+    public static long kingAttacks(int square) {
+        return KING_ATTACKS[square];
+    }
+
+    /**
+     * @return the squares a pawn of the given color standing on square attacks
+     */
+    public static long pawnAttacks(ChessGame.TeamColor color, int square) {
+        return PAWN_ATTACKS[color.ordinal()][square];
+    }
+
+    /**
+     * @return the squares strictly between two squares on a shared row, column or
+     * diagonal, or an empty set if they do not share one
+     */
+    public static long between(int from, int to) {
+        return BETWEEN[from][to];
+    }
+
+    /**
+     * @return every square on the full row, column or diagonal through two squares,
+     * or an empty set if they do not share one
+     */
+    public static long line(int from, int to) {
+        return LINE[from][to];
+    }
+}
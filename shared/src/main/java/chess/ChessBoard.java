@@ -1,6 +1,8 @@
 package chess;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -10,8 +12,20 @@ import java.util.Objects;
  * signature of the existing methods.
  */
 public class ChessBoard {
+    // FEN letters in Bitboards.pieceIndex order
+    private static final String FEN_PIECES = "KQBNRPkqbnrp";
 
     private ChessPiece[][] squares = new ChessPiece[8][8];
+
+    // Bitboard view of squares, one board per color and piece type plus occupancy.
+    // These are transient so the JSON form stays the squares grid; a board built
+    // by Gson starts unsynced and rebuilds them on first use.
+    private transient long[] pieceBitboards = new long[12];
+    private transient long[] colorBitboards = new long[2];
+    private transient long occupied;
+    private transient long pieceKey;
+    private transient boolean bitboardsSynced;
+
     public ChessBoard() { }
 
     @Override
@@ -28,7 +42,7 @@ public class ChessBoard {
 
     @Override
     public int hashCode() {
-        return Arrays.deepHashCode(squares);
+        return Long.hashCode(getPieceKey());
     }
 
     /**
@@ -38,7 +52,27 @@ public class ChessBoard {
      * @param piece    the piece to add
      */
     public void addPiece(ChessPosition position, ChessPiece piece) {
-        squares[position.getRow() - 1][position.getColumn() - 1] = piece;
+        addPiece(Bitboards.square(position), piece);
+    }
+
+    /**
+     * Adds a chess piece to the chessboard by square index
+     *
+     * @param square where to add the piece to, see {@link Bitboards#square(int, int)}
+     * @param piece  the piece to add, or null to empty the square
+     */
+    public void addPiece(int square, ChessPiece piece) {
+        ChessPiece oldPiece = squares[square >>> 3][square & 7];
+        squares[square >>> 3][square & 7] = piece;
+        if (bitboardsSynced) {
+            long bit = 1L << square;
+            if (oldPiece != null) {
+                clearBit(oldPiece, bit);
+            }
+            if (piece != null) {
+                setBit(piece, bit);
+            }
+        }
     }
 
     /**
@@ -52,35 +86,233 @@ public class ChessBoard {
         return squares[position.getRow() - 1][position.getColumn() - 1];
     }
 
+    /**
+     * Gets a chess piece on the chessboard by square index
+     *
+     * @param square the square index, see {@link Bitboards#square(int, int)}
+     * @return Either the piece on the square, or null if the square is empty
+     */
+    public ChessPiece getPiece(int square) {
+        return squares[square >>> 3][square & 7];
+    }
+
+    /**
+     * @return a bitboard of the squares holding pieces of the given color and type
+     */
+    public long getBitboard(ChessGame.TeamColor color, ChessPiece.PieceType type) {
+        syncBitboards();
+        return pieceBitboards[Bitboards.pieceIndex(color, type)];
+    }
+
+    /**
+     * @return a bitboard of the squares holding pieces of the given color
+     */
+    public long getOccupancy(ChessGame.TeamColor color) {
+        syncBitboards();
+        return colorBitboards[color.ordinal()];
+    }
+
+    /**
+     * @return a bitboard of every occupied square
+     */
+    public long getOccupancy() {
+        syncBitboards();
+        return occupied;
+    }
+
+    /**
+     * Gets the square of a team's king straight from its bitboard, without
+     * looking through the board
+     *
+     * @param color the team whose king to find
+     * @return the king's square index, or -1 if the team has no king
+     */
+    public int getKingSquare(ChessGame.TeamColor color) {
+        long king = getBitboard(color, ChessPiece.PieceType.KING);
+        return king == 0 ? -1 : Long.numberOfTrailingZeros(king);
+    }
+
+    /**
+     * @return the position of a team's king, or null if the team has no king
+     */
+    public ChessPosition getKingPosition(ChessGame.TeamColor color) {
+        int kingSquare = getKingSquare(color);
+        return kingSquare < 0 ? null : ChessPosition.ofSquare(kingSquare);
+    }
+
+    /**
+     * Gets the positions of a team's pieces, visiting only the occupied squares
+     *
+     * @param color the team whose pieces to list
+     * @return the positions holding the team's pieces, from row 1 upward and
+     * left to right within a row
+     */
+    public List<ChessPosition> getPiecePositions(ChessGame.TeamColor color) {
+        long pieces = getOccupancy(color);
+        List<ChessPosition> positions = new ArrayList<>(Long.bitCount(pieces));
+        while (pieces != 0) {
+            positions.add(ChessPosition.ofSquare(Long.numberOfTrailingZeros(pieces)));
+            pieces &= pieces - 1;
+        }
+        return positions;
+    }
+
+    /**
+     * @return the number of pieces a team has on the board
+     */
+    public int getPieceCount(ChessGame.TeamColor color) {
+        return Long.bitCount(getOccupancy(color));
+    }
+
+    /**
+     * @return the Zobrist key of the pieces on the board, kept up to date by
+     * addPiece (see {@link Zobrist})
+     */
+    public long getPieceKey() {
+        syncBitboards();
+        return pieceKey;
+    }
+
+    private void setBit(ChessPiece piece, long bit) {
+        pieceKey ^= Zobrist.piece(piece, Long.numberOfTrailingZeros(bit));
+        pieceBitboards[Bitboards.pieceIndex(piece.getTeamColor(), piece.getPieceType())] |= bit;
+        colorBitboards[piece.getTeamColor().ordinal()] |= bit;
+        occupied |= bit;
+    }
+
+    private void clearBit(ChessPiece piece, long bit) {
+        pieceKey ^= Zobrist.piece(piece, Long.numberOfTrailingZeros(bit));
+        pieceBitboards[Bitboards.pieceIndex(piece.getTeamColor(), piece.getPieceType())] &= ~bit;
+        colorBitboards[piece.getTeamColor().ordinal()] &= ~bit;
+        occupied &= ~bit;
+    }
+
+    private void clearBitboards() {
+        Arrays.fill(pieceBitboards, 0L);
+        Arrays.fill(colorBitboards, 0L);
+        occupied = 0L;
+        pieceKey = 0L;
+    }
+
+    /**
+     * Rebuilds the bitboards from the squares grid if they have not been built yet,
+     * which is the case for a board that was just read back from JSON
+     */
+    private void syncBitboards() {
+        if (bitboardsSynced) {
+            return;
+        }
+        clearBitboards();
+        for (int square = 0; square < 64; square++) {
+            ChessPiece piece = getPiece(square);
+            if (piece != null) {
+                setBit(piece, 1L << square);
+            }
+        }
+        bitboardsSynced = true;
+    }
+
     /**
      * Sets the board to the default starting board
      * (How the game of chess normally starts)
      */
     public void resetBoard() {
         squares = new ChessPiece[8][8];
-        addPiece(new ChessPosition(1, 1), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.ROOK));
-        addPiece(new ChessPosition(1, 2), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.KNIGHT));
-        addPiece(new ChessPosition(1, 3), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.BISHOP));
-        addPiece(new ChessPosition(1, 4), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.QUEEN));
-        addPiece(new ChessPosition(1, 5), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.KING));
-        addPiece(new ChessPosition(1, 6), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.BISHOP));
-        addPiece(new ChessPosition(1, 7), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.KNIGHT));
-        addPiece(new ChessPosition(1, 8), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.ROOK));
+        clearBitboards();
+        bitboardsSynced = true;
+        addPiece(ChessPosition.of(1, 1), ChessPiece.of(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.ROOK));
+        addPiece(ChessPosition.of(1, 2), ChessPiece.of(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.KNIGHT));
+        addPiece(ChessPosition.of(1, 3), ChessPiece.of(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.BISHOP));
+        addPiece(ChessPosition.of(1, 4), ChessPiece.of(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.QUEEN));
+        addPiece(ChessPosition.of(1, 5), ChessPiece.of(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.KING));
+        addPiece(ChessPosition.of(1, 6), ChessPiece.of(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.BISHOP));
+        addPiece(ChessPosition.of(1, 7), ChessPiece.of(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.KNIGHT));
+        addPiece(ChessPosition.of(1, 8), ChessPiece.of(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.ROOK));
         for (int i = 1; i < 9; i++) {
-            addPiece(new ChessPosition(2, i), new ChessPiece(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.PAWN));
+            addPiece(ChessPosition.of(2, i), ChessPiece.of(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.PAWN));
         }
 
-        addPiece(new ChessPosition(8, 1), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.ROOK));
-        addPiece(new ChessPosition(8, 2), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.KNIGHT));
-        addPiece(new ChessPosition(8, 3), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.BISHOP));
-        addPiece(new ChessPosition(8, 4), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.QUEEN));
-        addPiece(new ChessPosition(8, 5), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.KING));
-        addPiece(new ChessPosition(8, 6), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.BISHOP));
-        addPiece(new ChessPosition(8, 7), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.KNIGHT));
-        addPiece(new ChessPosition(8, 8), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.ROOK));
+        addPiece(ChessPosition.of(8, 1), ChessPiece.of(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.ROOK));
+        addPiece(ChessPosition.of(8, 2), ChessPiece.of(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.KNIGHT));
+        addPiece(ChessPosition.of(8, 3), ChessPiece.of(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.BISHOP));
+        addPiece(ChessPosition.of(8, 4), ChessPiece.of(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.QUEEN));
+        addPiece(ChessPosition.of(8, 5), ChessPiece.of(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.KING));
+        addPiece(ChessPosition.of(8, 6), ChessPiece.of(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.BISHOP));
+        addPiece(ChessPosition.of(8, 7), ChessPiece.of(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.KNIGHT));
+        addPiece(ChessPosition.of(8, 8), ChessPiece.of(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.ROOK));
         for (int i = 1; i < 9; i++) {
-            addPiece(new ChessPosition(7, i), new ChessPiece(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.PAWN));
+            addPiece(ChessPosition.of(7, i), ChessPiece.of(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.PAWN));
+        }
+    }
+
+    /**
+     * Gets the piece placement field of a FEN string for this board: the rows from
+     * 8 down to 1 separated by slashes, white pieces in upper case, black pieces in
+     * lower case and runs of empty squares as digits
+     *
+     * @return the FEN piece placement, for example "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR"
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder(72);
+        for (int row = 8; row >= 1; row--) {
+            int empty = 0;
+            for (int col = 1; col <= 8; col++) {
+                ChessPiece piece = getPiece(Bitboards.square(row, col));
+                if (piece == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                fen.append(FEN_PIECES.charAt(Bitboards.pieceIndex(piece.getTeamColor(), piece.getPieceType())));
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (row > 1) {
+                fen.append('/');
+            }
+        }
+        return fen.toString();
+    }
+
+    /**
+     * Builds a board from the piece placement field of a FEN string
+     *
+     * @param placement the rows from 8 down to 1 separated by slashes
+     * @return a board holding the pieces described
+     * @throws InvalidFenException if the placement does not describe 8 rows of 8 squares
+     */
+    public static ChessBoard fromFen(String placement) throws InvalidFenException {
+        String[] rows = placement.split("/", -1);
+        if (rows.length != 8) {
+            throw new InvalidFenException("Expected 8 rows but found " + rows.length);
+        }
+        ChessBoard board = new ChessBoard();
+        for (int i = 0; i < 8; i++) {
+            int row = 8 - i;
+            int col = 1;
+            for (char c : rows[i].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    col += c - '0';
+                } else {
+                    int pieceIndex = FEN_PIECES.indexOf(c);
+                    if (pieceIndex < 0 || col > 8) {
+                        throw new InvalidFenException("Bad square '" + c + "' in row " + row);
+                    }
+                    ChessGame.TeamColor color = ChessGame.TeamColor.values()[pieceIndex / 6];
+                    ChessPiece.PieceType type = ChessPiece.PieceType.values()[pieceIndex % 6];
+                    board.addPiece(Bitboards.square(row, col), ChessPiece.of(color, type));
+                    col++;
+                }
+            }
+            if (col != 9) {
+                throw new InvalidFenException("Row " + row + " does not have 8 squares");
+            }
         }
+        return board;
     }
 
     @Override
@@ -1,7 +1,11 @@
 package chess;
 
-import java.security.KeyStore;
+import chess.tablebase.Tablebase;
+import chess.tablebase.TablebaseResult;
+import com.google.gson.annotations.JsonAdapter;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
@@ -12,26 +16,68 @@ import java.util.Objects;
  * Note: You can add to this class, but you may not alter
  * signature of the existing methods.
  */
+@JsonAdapter(TrimmedHistoryAdapterFactory.class)
 public class ChessGame {
+    private static final int CASTLING_MASK = 0xF;
+    private static final int EN_PASSANT_SHIFT = 4;
+    private static final int CLOCK_SHIFT = 8;
+    private static final int MAX_CLOCK = 0xFF;
+    private static final int FULLMOVE_SHIFT = 16;
+    private static final int MAX_FULLMOVE = 0x7FFF;
+    private static final long LIGHT_SQUARES = 0x55AA55AA55AA55AAL;
+    private static final int KEYFRAME_INTERVAL = 16;
+    private static final long HISTORY_MOVE_MASK = (1L << 19) - 1;
+    private static final int HISTORY_CAPTURED_SHIFT = 19;
+    private static final long HISTORY_EN_PASSANT = 1L << 23;
+    private static final int HISTORY_STATE_SHIFT = 24;
+
     private TeamColor teamTurn;
     private ChessBoard gameBoard;
-    private Collection<ChessMove> possibleEnPassant;
-    private boolean whiteCastleRight;
-    private boolean whiteCastleLeft;
-    private boolean blackCastleRight;
-    private boolean blackCastleLeft;
+    // The state that can't be read off the board, packed into one int: bits 0-3
+    // castling rights (white right, white left, black right, black left), bits 4-7
+    // the en passant file plus one or 0 for none, bits 8-15 the halfmove clock,
+    // bits 16-30 the fullmove number
+    private int positionState;
+    // Every move played with makeMove, oldest first. A record packs the move
+    // (bits 0-18) with what it changed that can't be worked out again when taking
+    // it back: the captured piece as its piece index plus one (bits 19-22),
+    // whether that was en passant (bit 23) and the position state before the move
+    // (bits 24-54). Records from historyPly up to historyLength were taken back
+    // with undo and can be redone. The array has room to spare, which is trimmed
+    // off before the game is written as JSON.
+    private long[] history = new long[0];
+    private int historyLength;
+    private int historyPly;
     private boolean gameOver = false;
 
+    // Snapshots of the position before every KEYFRAME_INTERVAL-th move of the
+    // history, so seek only has to replay the moves after the nearest one
+    private transient List<PositionSnapshot> keyframes;
+    // The Zobrist key of the position before each move of the history, for
+    // spotting repetitions; as long as history when it isn't null
+    private transient long[] historyKeys;
+
+    // Undo stack for doMove/undoMove. Each record packs the from, to and captured
+    // squares with the position state and turn before the move; the piece that
+    // moved, the piece it captured and the position's key are kept alongside.
+    private transient long[] undoRecords = new long[32];
+    private transient long[] undoKeys = new long[32];
+    private transient ChessPiece[] undoMoved = new ChessPiece[32];
+    private transient ChessPiece[] undoCaptured = new ChessPiece[32];
+    private transient int undoCount;
+    private transient MoveList scratchMoves = new MoveList();
+
+    // The status of the last position asked about, with the Zobrist key of that
+    // position. The key also catches changes made straight to the board.
+    private transient GameStatus status;
+    private transient long statusKey;
+
     public ChessGame() {
         this.teamTurn = TeamColor.WHITE;
         this.gameBoard = new ChessBoard();
         gameBoard.resetBoard();
 
-        this.possibleEnPassant = new ArrayList<>();
-        this.whiteCastleRight = true;
-        this.whiteCastleLeft = true;
-        this.blackCastleRight = true;
-        this.blackCastleLeft = true;
+        this.positionState = CASTLING_MASK | 1 << FULLMOVE_SHIFT;
     }
 
     /**
@@ -70,314 +116,777 @@ public class ChessGame {
         if (pieceInSpot == null){
             return null;
         }
-        Collection<ChessMove> possibleMoves = pieceInSpot.pieceMoves(gameBoard, startPosition);
-        Collection<ChessMove> validMoveList = new ArrayList<>();
-
-        for (ChessMove move : possibleMoves) {
-            if (validateMove(move)) {
-                validMoveList.add(move);
-            }
+        if (pieceInSpot.getTeamColor() == teamTurn) {
+            return new ArrayList<>(getStatus().getMoves(startPosition));
         }
+        scratchMoves.clear();
+        MoveGenerator.generate(gameBoard, pieceInSpot.getTeamColor(), getCastlingRights(), getEnPassantSquare(),
+                1L << Bitboards.square(startPosition), scratchMoves);
+        return scratchMoves.toChessMoves();
+    }
 
-        if (!possibleEnPassant.isEmpty()) {
-            for (ChessMove move : possibleEnPassant) {
-                if (move.getStartPosition().equals(startPosition) && validateEnPassant(move)) {
-                    validMoveList.add(move);
-                }
-            }
+    /**
+     * Adds the valid moves of the piece at the given location to a caller-owned
+     * buffer, packed with {@link Move}. Nothing is allocated unless the buffer has
+     * to grow.
+     *
+     * @param startPosition the piece to get valid moves for
+     * @param moves the buffer to add the moves to; it is not cleared first
+     */
+    public void validMoves(ChessPosition startPosition, MoveList moves) {
+        ChessPiece pieceInSpot = gameBoard.getPiece(startPosition);
+        if (pieceInSpot != null) {
+            MoveGenerator.generate(gameBoard, pieceInSpot.getTeamColor(), getCastlingRights(),
+                    getEnPassantSquare(), 1L << Bitboards.square(startPosition), moves);
         }
+    }
 
-        if (pieceInSpot.getPieceType() == ChessPiece.PieceType.KING) {
-            validMoveList.addAll(validateCastle(startPosition, pieceInSpot.getTeamColor()));
+    /**
+     * Gets the squares the piece at the given location can move to as a bitboard,
+     * with bit {@link Bitboards#square(int, int)} set for each one. A pawn that
+     * can promote on a square sets its bit once. Nothing is allocated.
+     *
+     * @param startPosition the piece to get valid moves for
+     * @return the destination squares, or 0 if there is no piece there or it
+     * can't move
+     */
+    public long validMoveTargets(ChessPosition startPosition) {
+        scratchMoves.clear();
+        validMoves(startPosition, scratchMoves);
+        long targets = 0L;
+        for (int i = 0; i < scratchMoves.size(); i++) {
+            targets |= 1L << Move.to(scratchMoves.get(i));
         }
+        return targets;
+    }
 
-        return validMoveList;
+    /**
+     * Gets every legal move for a team, whether or not it is that team's turn
+     *
+     * @param teamColor the team to get moves for
+     * @return all moves the team could legally make
+     */
+    public Collection<ChessMove> legalMoves(TeamColor teamColor) {
+        scratchMoves.clear();
+        legalMoves(teamColor, scratchMoves);
+        return scratchMoves.toChessMoves();
     }
 
-    private boolean validateMove(ChessMove move) {
-        // Get all the info I need
-        ChessPosition startPosition = move.getStartPosition();
-        ChessPosition endPosition = move.getEndPosition();
-        ChessPiece.PieceType oldType = gameBoard.getPiece(startPosition).getPieceType();
-        TeamColor myTeamColor = gameBoard.getPiece(startPosition).getTeamColor();
-        ChessPiece pieceCaptured = gameBoard.getPiece(endPosition);
-
-        // Make the move
-        makeTestMove(move);
-        // See if I'm in check
-        boolean inCheck = isInCheck(myTeamColor);
-        // Undo the move
-        ChessMove undoMove = new ChessMove(endPosition, startPosition, oldType);
-        makeTestMove(undoMove);
-        gameBoard.addPiece(endPosition, pieceCaptured);
-
-        return !inCheck;
-    }
-
-    private void makeTestMove(ChessMove move){
-        // ONLY CALL WHEN I'M SURE THERE IS A PIECE THERE.
-        // THAT'S WHY IT'S PRIVATE
+    /**
+     * Adds every legal move for a team to a caller-owned buffer, packed with
+     * {@link Move}. Nothing is allocated unless the buffer has to grow.
+     *
+     * @param teamColor the team to get moves for
+     * @param moves the buffer to add the moves to; it is not cleared first
+     */
+    public void legalMoves(TeamColor teamColor, MoveList moves) {
+        MoveGenerator.generate(gameBoard, teamColor, getCastlingRights(), getEnPassantSquare(), ~0L, moves);
+    }
+
+    /**
+     * Adds every legal capture for a team to a caller-owned buffer, packed with
+     * {@link Move}, including en passant. Promotions that don't capture are not
+     * included.
+     *
+     * @param teamColor the team to get captures for
+     * @param moves the buffer to add the captures to; it is not cleared first
+     */
+    public void legalCaptures(TeamColor teamColor, MoveList moves) {
+        MoveGenerator.generateCaptures(gameBoard, teamColor, getEnPassantSquare(), moves);
+    }
+
+    /**
+     * Makes a move in a chess game
+     *
+     * @param move chess move to perform
+     * @throws InvalidMoveException if move is invalid
+     */
+    public void makeMove(ChessMove move) throws InvalidMoveException {
         ChessPosition startPosition = move.getStartPosition();
-        ChessPosition endPosition = move.getEndPosition();
 
         ChessPiece pieceInSpot = gameBoard.getPiece(startPosition);
+        if (pieceInSpot == null) {
+            throw new InvalidMoveException("No piece there");
+        }
 
-        ChessPiece.PieceType newPieceType = move.getPromotionPiece();
-        TeamColor teamColor = pieceInSpot.getTeamColor();
-        if (newPieceType == null) {
-            newPieceType = pieceInSpot.getPieceType();
+        if (pieceInSpot.getTeamColor() != teamTurn || !isLegal(move)) {
+            throw new InvalidMoveException("You can't do that!");
         }
-        gameBoard.addPiece(endPosition, new ChessPiece(teamColor, newPieceType));
-        gameBoard.addPiece(startPosition, null);
+
+        int packedMove = Move.of(move);
+        recordHistory(packedMove);
+        applyMove(packedMove);
     }
 
-    private boolean validateEnPassant(ChessMove move) {
-        // Get all the info I need
-        ChessPosition startPosition = move.getStartPosition();
-        ChessPosition endPosition = move.getEndPosition();
-        TeamColor myTeamColor = gameBoard.getPiece(startPosition).getTeamColor();
-        ChessPosition pieceCapturedPosition = new ChessPosition(startPosition.getRow(), endPosition.getColumn());
-        ChessPiece pieceCaptured = gameBoard.getPiece(pieceCapturedPosition);
-
-        // Make the move
-        makeTestMove(move);
-        gameBoard.addPiece(pieceCapturedPosition, null);
-        // See if I'm in check
-        boolean inCheck = isInCheck(myTeamColor);
-        // Undo the move
-        ChessMove undoMove = new ChessMove(endPosition, startPosition, null);
-        makeTestMove(undoMove);
-        gameBoard.addPiece(pieceCapturedPosition, pieceCaptured);
-
-        return !inCheck;
-    }
-
-    private Collection<ChessMove> validateCastle(ChessPosition startPosition, TeamColor kingColor) {
-        Collection<ChessMove> possibleCastles = new ArrayList<>();
-        ChessPosition firstSpot;
-        ChessPosition secondSpot;
-        ChessPosition thirdSpot;
-        ChessPosition rookSpot;
-        ChessPiece rookPiece;
-        if (((whiteCastleRight && kingColor == TeamColor.WHITE) || (blackCastleRight && kingColor == TeamColor.BLACK))
-                && startPosition.getColumn() == 5) {
-            firstSpot = new ChessPosition(startPosition.getRow(), startPosition.getColumn()+1);
-            secondSpot = new ChessPosition(startPosition.getRow(), startPosition.getColumn()+2);
-            rookSpot = new ChessPosition(startPosition.getRow(), 8);
-            rookPiece = gameBoard.getPiece(rookSpot);
-            if (gameBoard.getPiece(firstSpot) != null || gameBoard.getPiece(secondSpot) != null
-                    || isInCheck(kingColor) || rookPiece == null
-                    || rookPiece.getPieceType() != ChessPiece.PieceType.ROOK
-                    || startPosition.getColumn() != 5) {
-                assert true;
-            } else {
-                checkIfCastleIntoCheck(startPosition, firstSpot, secondSpot, possibleCastles);
-            }
+    /**
+     * Adds a move that is about to be played to the history, dropping any moves
+     * that were taken back with undo and not redone
+     *
+     * @param move the packed move, which must not have been applied yet
+     */
+    private void recordHistory(int move) {
+        List<PositionSnapshot> frames = keyframes();
+        frames.subList(Math.ceilDiv(historyPly, KEYFRAME_INTERVAL), frames.size()).clear();
+        if (historyPly % KEYFRAME_INTERVAL == 0) {
+            frames.add(snapshot());
         }
-        if (((whiteCastleLeft && kingColor == TeamColor.WHITE) || (blackCastleLeft && kingColor == TeamColor.BLACK))
-                && startPosition.getColumn() == 5) {
-            firstSpot = new ChessPosition(startPosition.getRow(), startPosition.getColumn()-1);
-            secondSpot = new ChessPosition(startPosition.getRow(), startPosition.getColumn()-2);
-            thirdSpot = new ChessPosition(startPosition.getRow(), startPosition.getColumn()-3);
-            rookSpot = new ChessPosition(startPosition.getRow(), 1);
-            rookPiece = gameBoard.getPiece(rookSpot);
-            if (gameBoard.getPiece(firstSpot) != null || gameBoard.getPiece(secondSpot) != null
-                    || gameBoard.getPiece(thirdSpot) != null || isInCheck(kingColor) || rookPiece == null
-                    || rookPiece.getPieceType() != ChessPiece.PieceType.ROOK) {
-                assert true;
-            } else {
-                checkIfCastleIntoCheck(startPosition, firstSpot, secondSpot, possibleCastles);
-            }
+
+        int from = Move.from(move);
+        int to = Move.to(move);
+        boolean enPassantCapture = isEnPassantCapture(gameBoard.getPiece(from), from, to);
+        ChessPiece captured = gameBoard.getPiece(enPassantCapture ? (from & ~7) | (to & 7) : to);
+        int capturedCode = captured == null ? 0
+                : Bitboards.pieceIndex(captured.getTeamColor(), captured.getPieceType()) + 1;
+
+        long[] keys = historyKeys();
+        if (historyPly == history.length) {
+            int capacity = Math.max(16, historyPly + historyPly / 2);
+            history = Arrays.copyOf(history, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            historyKeys = keys;
         }
+        history[historyPly] = (move & HISTORY_MOVE_MASK)
+                | (long) capturedCode << HISTORY_CAPTURED_SHIFT
+                | (enPassantCapture ? HISTORY_EN_PASSANT : 0L)
+                | (long) positionState << HISTORY_STATE_SHIFT;
+        keys[historyPly] = getZobristKey();
+        historyPly++;
+        historyLength = historyPly;
+    }
 
-        return possibleCastles;
+    /**
+     * Takes back the last move played with makeMove. It stays in the history and
+     * can be played again with {@link #redo()}. A game that was over is no longer
+     * over once a move is taken back. This must not be used while moves played
+     * with doMove are still waiting to be undone.
+     *
+     * @return True if a move was taken back, false if there was none
+     */
+    public boolean undo() {
+        if (historyPly == 0) {
+            return false;
+        }
+        takeBackHistoryMove();
+        return true;
+    }
+
+    /**
+     * Plays again the last move taken back with {@link #undo()}
+     *
+     * @return True if a move was played, false if there was none to redo
+     */
+    public boolean redo() {
+        if (historyPly == historyLength) {
+            return false;
+        }
+        replayHistoryMove();
+        return true;
     }
 
-    private void checkIfCastleIntoCheck(ChessPosition startPosition, ChessPosition firstSpot,
-                                        ChessPosition secondSpot, Collection<ChessMove> possibleCastles) {
-        ChessMove firstMove = new ChessMove(startPosition, firstSpot, null);
-        ChessMove secondMove = new ChessMove(firstSpot, secondSpot, null);
-        if (validateCastleMove(firstMove, secondMove)) {
-            ChessMove castle = new ChessMove(startPosition, secondSpot, null);
-            possibleCastles.add(castle);
+    /**
+     * Moves to the position after a given number of moves of the history. It
+     * starts from whichever is closer, the current position or the nearest
+     * keyframe before the target, so at most a few moves are replayed however
+     * long the game is. Going back to an earlier ply means the game is no longer
+     * over.
+     *
+     * @param ply the number of moves from the start of the history, from 0 up to
+     * {@link #getHistoryLength()}
+     */
+    public void seek(int ply) {
+        if (ply < 0 || ply > historyLength) {
+            throw new IllegalArgumentException("No ply " + ply + " in a history of " + historyLength + " moves");
+        }
+        if (ply == historyPly) {
+            return;
+        }
+        if (ply < historyPly) {
+            gameOver = false;
+        }
+        List<PositionSnapshot> frames = keyframes();
+        int frame = Math.min(ply / KEYFRAME_INTERVAL, frames.size() - 1);
+        int framePly = frame * KEYFRAME_INTERVAL;
+        if (ply - framePly < Math.abs(ply - historyPly)) {
+            restorePosition(frames.get(frame));
+            historyPly = framePly;
+        }
+        while (historyPly < ply) {
+            replayHistoryMove();
+        }
+        while (historyPly > ply) {
+            takeBackHistoryMove();
         }
     }
 
-    private boolean validateCastleMove(ChessMove firstMove, ChessMove secondMove) {
-        // Get all the info I need
-        ChessPosition startPosition = firstMove.getStartPosition();
-        ChessPosition firstPosition = firstMove.getEndPosition();
-        ChessPosition endPosition = secondMove.getEndPosition();
-        TeamColor myTeamColor = gameBoard.getPiece(startPosition).getTeamColor();
-        ChessMove undoMove;
+    /**
+     * @return the number of moves of the history the current position is after
+     */
+    public int getHistoryPly() {
+        return historyPly;
+    }
 
-        // Make the move
-        makeTestMove(firstMove);
-        // See if I'm in check
-        boolean inCheck = isInCheck(myTeamColor);
-        if (!inCheck) {
-            makeTestMove(secondMove);
-            inCheck = isInCheck(myTeamColor);
-            undoMove = new ChessMove(endPosition, startPosition, null);
-        } else {
-            undoMove = new ChessMove(firstPosition, startPosition, null);
+    /**
+     * @return the number of moves in the history, including any taken back
+     */
+    public int getHistoryLength() {
+        return historyLength;
+    }
+
+    /**
+     * @return every move in the history in the order played, including any
+     * taken back
+     */
+    public List<ChessMove> getMoveHistory() {
+        List<ChessMove> moves = new ArrayList<>(historyLength);
+        for (int i = 0; i < historyLength; i++) {
+            moves.add(Move.toChessMove((int) (history[i] & HISTORY_MOVE_MASK)));
         }
-        // Undo the move
-        makeTestMove(undoMove);
+        return moves;
+    }
+
+    private void replayHistoryMove() {
+        applyMove((int) (history[historyPly] & HISTORY_MOVE_MASK));
+        historyPly++;
+    }
 
-        return !inCheck;
+    private void takeBackHistoryMove() {
+        historyPly--;
+        long record = history[historyPly];
+        int move = (int) (record & HISTORY_MOVE_MASK);
+        int from = Move.from(move);
+        int to = Move.to(move);
+        ChessPiece pieceMoved = gameBoard.getPiece(to);
+        if (Move.promotion(move) != null) {
+            pieceMoved = ChessPiece.of(pieceMoved.getTeamColor(), ChessPiece.PieceType.PAWN);
+        }
+        int capturedSquare = (record & HISTORY_EN_PASSANT) != 0 ? (from & ~7) | (to & 7) : to;
+        int capturedCode = (int) (record >>> HISTORY_CAPTURED_SHIFT & 0xF);
+        ChessPiece captured = capturedCode == 0 ? null : ChessPiece.of(TeamColor.values()[(capturedCode - 1) / 6],
+                ChessPiece.PieceType.values()[(capturedCode - 1) % 6]);
+
+        restoreSquares(from, to, capturedSquare, pieceMoved, captured);
+        positionState = (int) (record >>> HISTORY_STATE_SHIFT & 0x7FFFFFFF);
+        teamTurn = pieceMoved.getTeamColor();
+        status = null;
+        gameOver = false;
     }
 
     /**
-     * Makes a move in a chess game
+     * @return the history's keyframes, made again by walking the history if the
+     * game was read back from JSON without them
+     */
+    private List<PositionSnapshot> keyframes() {
+        if (keyframes == null) {
+            List<PositionSnapshot> frames = new ArrayList<>();
+            walkHistory(() -> {
+                if (historyPly % KEYFRAME_INTERVAL == 0) {
+                    frames.add(snapshot());
+                }
+            });
+            keyframes = frames;
+        }
+        return keyframes;
+    }
+
+    /**
+     * @return the history's position keys, made again by walking the history if
+     * the game was read back from JSON without them
+     */
+    private long[] historyKeys() {
+        if (historyKeys == null) {
+            long[] keys = new long[history.length];
+            walkHistory(() -> keys[historyPly] = getZobristKey());
+            historyKeys = keys;
+        }
+        return historyKeys;
+    }
+
+    /**
+     * Takes the whole history back and plays it again, then returns to the
+     * current position
      *
-     * @param move chess move to perform
-     * @throws InvalidMoveException if move is invalid
+     * @param beforeMove called in the position before each move of the history
      */
-    public void makeMove(ChessMove move) throws InvalidMoveException {
-        ChessPosition startPosition = move.getStartPosition();
-        ChessPosition endPosition = move.getEndPosition();
+    private void walkHistory(Runnable beforeMove) {
+        if (historyLength == 0) {
+            return;
+        }
+        PositionSnapshot current = snapshot();
+        int currentPly = historyPly;
+        boolean wasOver = gameOver;
+        while (historyPly > 0) {
+            takeBackHistoryMove();
+        }
+        while (historyPly < historyLength) {
+            beforeMove.run();
+            replayHistoryMove();
+        }
+        restorePosition(current);
+        historyPly = currentPly;
+        gameOver = wasOver;
+    }
 
-        ChessPiece pieceInSpot = gameBoard.getPiece(startPosition);
+    /**
+     * Drops the room to spare at the end of the history, so it isn't written out
+     * with the game
+     */
+    void trimHistory() {
+        if (history.length != historyLength) {
+            history = Arrays.copyOf(history, historyLength);
+            if (historyKeys != null) {
+                historyKeys = Arrays.copyOf(historyKeys, historyLength);
+            }
+        }
+    }
+
+    /**
+     * Puts the board, turn and position state back to those of a snapshot,
+     * leaving the history and whether the game is over alone
+     */
+    private void restorePosition(PositionSnapshot snapshot) {
+        gameBoard = snapshot.toBoard();
+        teamTurn = snapshot.getTeamTurn();
+        positionState = snapshot.getPositionState();
+        status = null;
+    }
+
+    /**
+     * Determines if a move is legal for the team whose piece is on its start
+     * square, whether or not it is that team's turn. Only the given move is
+     * checked, so this is much cheaper than looking for it in validMoves.
+     *
+     * @param move the move to check
+     * @return True if the move is legal
+     */
+    public boolean isLegal(ChessMove move) {
+        ChessPosition start = move.getStartPosition();
+        ChessPosition end = move.getEndPosition();
+        if (!onBoard(start) || !onBoard(end)) {
+            return false;
+        }
+        ChessPiece pieceInSpot = gameBoard.getPiece(start);
         if (pieceInSpot == null) {
-            throw new InvalidMoveException("No piece there");
+            return false;
         }
+        scratchMoves.clear();
+        return MoveGenerator.isLegal(gameBoard, pieceInSpot.getTeamColor(), getCastlingRights(),
+                getEnPassantSquare(), Move.of(move), scratchMoves);
+    }
 
-        Collection<ChessMove> validMoves = validMoves(startPosition);
-        TeamColor pieceColor = pieceInSpot.getTeamColor();
-        if (!validMoves.contains(move) || pieceColor != teamTurn) {
-            throw new InvalidMoveException("You can't do that!");
+    private static boolean onBoard(ChessPosition position) {
+        return position.getRow() >= 1 && position.getRow() <= 8
+                && position.getColumn() >= 1 && position.getColumn() <= 8;
+    }
+
+    /**
+     * Gets the status of the current position for the team whose turn it is: its
+     * legal moves, whether it is in check, and whether it is checkmated or
+     * stalemated. The status is worked out once and reused until the position
+     * changes.
+     *
+     * @return the status of the current position
+     */
+    public GameStatus getStatus() {
+        GameStatus knownStatus = cachedStatus();
+        if (knownStatus != null) {
+            return knownStatus;
+        }
+        scratchMoves.clear();
+        legalMoves(teamTurn, scratchMoves);
+        status = new GameStatus(teamTurn, isInCheck(teamTurn), scratchMoves, drawResult());
+        statusKey = getZobristKey();
+        return status;
+    }
+
+    /**
+     * Gets the status of the current position like {@link #getStatus()}, but
+     * also ends the game as a draw when an endgame tablebase shows that neither
+     * team can win with best play
+     *
+     * @param tablebase the tablebase to consult, or null to skip it
+     * @return the status of the current position
+     */
+    public GameStatus getStatus(Tablebase tablebase) {
+        GameStatus knownStatus = getStatus();
+        if (knownStatus.isGameOver() || tablebase == null) {
+            return knownStatus;
         }
+        TablebaseResult result = tablebase.probe(this);
+        if (result == null || result.outcome() != TablebaseResult.Outcome.DRAW) {
+            return knownStatus;
+        }
+        scratchMoves.clear();
+        legalMoves(teamTurn, scratchMoves);
+        return new GameStatus(teamTurn, knownStatus.isInCheck(), scratchMoves, GameStatus.Result.DEAD_POSITION);
+    }
 
-        if (pieceInSpot.getPieceType() == ChessPiece.PieceType.PAWN) {
-            if (startPosition.getRow() - endPosition.getRow() == -2 ||
-                    startPosition.getRow() - endPosition.getRow() == 2) {
-                pawnMovedEnPassantCheck(move, pieceInSpot);
+    /**
+     * @return the kind of draw the game has reached without needing a move, or
+     * null if it hasn't reached one
+     */
+    private GameStatus.Result drawResult() {
+        if (isInsufficientMaterial()) {
+            return GameStatus.Result.INSUFFICIENT_MATERIAL;
+        }
+        if (isThreefoldRepetition()) {
+            return GameStatus.Result.REPETITION;
+        }
+        if (isFiftyMoveRule()) {
+            return GameStatus.Result.FIFTY_MOVES;
+        }
+        return null;
+    }
+
+    /**
+     * Determines if the current position has now appeared three times with the
+     * same team to move, castling rights and en passant options. Moves played
+     * with doMove are included.
+     *
+     * @return True if the position has been repeated three times
+     */
+    public boolean isThreefoldRepetition() {
+        long key = getZobristKey();
+        // A capture or pawn move can't be undone, so nothing older than the clock can match
+        int remaining = getHalfmoveClock();
+        int repeats = 0;
+        for (int i = undoCount - 1; i >= 0 && remaining > 0; i--, remaining--) {
+            if (undoKeys[i] == key) {
+                repeats++;
+            }
+        }
+        long[] keys = remaining > 0 ? historyKeys() : null;
+        for (int i = historyPly - 1; i >= 0 && remaining > 0; i--, remaining--) {
+            if (keys[i] == key) {
+                repeats++;
             }
         }
+        return repeats >= 2;
+    }
 
-        checkIfMoveBreaksCastle(move);
+    /**
+     * Determines if fifty moves by each team have been made without a capture or
+     * a pawn move
+     *
+     * @return True if the fifty-move rule ends the game
+     */
+    public boolean isFiftyMoveRule() {
+        return getHalfmoveClock() >= 100;
+    }
 
-        ChessPiece.PieceType newPieceType = move.getPromotionPiece();
-        if (newPieceType == null) {
-            newPieceType = pieceInSpot.getPieceType();
-        }
-        gameBoard.addPiece(endPosition, new ChessPiece(pieceColor, newPieceType));
-        gameBoard.addPiece(startPosition, null);
-        if (possibleEnPassant.contains(move)) {
-            gameBoard.addPiece(new ChessPosition(startPosition.getRow(), endPosition.getColumn()), null);
-            possibleEnPassant.remove(move);
-        }
-        if (!possibleEnPassant.isEmpty()) {
-            List<ChessMove> toRemove = new ArrayList<>();
-            for (ChessMove enPassant : possibleEnPassant) {
-                ChessPiece pieceInStartSpot = gameBoard.getPiece(enPassant.getStartPosition());
-                TeamColor teamColor = pieceInStartSpot.getTeamColor();
-                if (teamColor == teamTurn) {
-                   toRemove.add(enPassant);
-                }
+    /**
+     * Determines if neither team has the pieces to ever checkmate: only kings,
+     * kings and a single bishop or knight, or kings and bishops that all stand on
+     * squares of the same color
+     *
+     * @return True if checkmate is impossible for both teams
+     */
+    public boolean isInsufficientMaterial() {
+        long heavyPieces = 0L;
+        long knights = 0L;
+        long bishops = 0L;
+        for (TeamColor color : TeamColor.values()) {
+            heavyPieces |= gameBoard.getBitboard(color, ChessPiece.PieceType.PAWN)
+                    | gameBoard.getBitboard(color, ChessPiece.PieceType.ROOK)
+                    | gameBoard.getBitboard(color, ChessPiece.PieceType.QUEEN);
+            knights |= gameBoard.getBitboard(color, ChessPiece.PieceType.KNIGHT);
+            bishops |= gameBoard.getBitboard(color, ChessPiece.PieceType.BISHOP);
+        }
+        if (heavyPieces != 0) {
+            return false;
+        }
+        if (Long.bitCount(knights | bishops) <= 1) {
+            return true;
+        }
+        return knights == 0 && ((bishops & LIGHT_SQUARES) == 0 || (bishops & ~LIGHT_SQUARES) == 0);
+    }
+
+    /**
+     * @return the status worked out earlier if the position hasn't changed since,
+     * otherwise null
+     */
+    private GameStatus cachedStatus() {
+        return status != null && statusKey == getZobristKey() ? status : null;
+    }
+
+    /**
+     * Plays a move on the board without checking that it is legal, pushing an undo
+     * record so it can be taken back with {@link #undoMove()}. Castling, en passant
+     * and promotion are all recognised from the move itself. The turn passes to the
+     * other team.
+     *
+     * @param move the move to play, which must start on a square holding a piece
+     */
+    public void doMove(ChessMove move) {
+        doMove(Move.of(move));
+    }
+
+    /**
+     * Plays a move packed with {@link Move} without checking that it is legal,
+     * exactly like {@link #doMove(ChessMove)} but without touching any objects
+     *
+     * @param move the packed move to play, which must start on a square holding a piece
+     */
+    public void doMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        ChessPiece pieceMoving = gameBoard.getPiece(from);
+        int capturedSquare = isEnPassantCapture(pieceMoving, from, to) ? (from & ~7) | (to & 7) : to;
+
+        if (undoCount == 0 && historyKeys == null) {
+            // Rebuilding the keys walks the history, which can't be done under moves waiting to be undone
+            historyKeys();
+        }
+        if (undoCount == undoRecords.length) {
+            undoRecords = Arrays.copyOf(undoRecords, undoCount * 2);
+            undoKeys = Arrays.copyOf(undoKeys, undoCount * 2);
+            undoMoved = Arrays.copyOf(undoMoved, undoCount * 2);
+            undoCaptured = Arrays.copyOf(undoCaptured, undoCount * 2);
+        }
+        undoRecords[undoCount] = from
+                | (long) to << 6
+                | (long) capturedSquare << 12
+                | (long) positionState << 18
+                | (long) teamTurn.ordinal() << 49;
+        undoKeys[undoCount] = getZobristKey();
+        undoMoved[undoCount] = pieceMoving;
+        undoCaptured[undoCount] = gameBoard.getPiece(capturedSquare);
+        undoCount++;
+
+        applyMove(move);
+    }
+
+    /**
+     * Takes back the last move played with {@link #doMove(int)}, restoring the
+     * board, the captured piece, castling rights, en passant and the team turn
+     */
+    public void undoMove() {
+        undoCount--;
+        long record = undoRecords[undoCount];
+        int from = (int) (record & 63);
+        int to = (int) (record >>> 6 & 63);
+        int capturedSquare = (int) (record >>> 12 & 63);
+        restoreSquares(from, to, capturedSquare, undoMoved[undoCount], undoCaptured[undoCount]);
+        undoMoved[undoCount] = null;
+        undoCaptured[undoCount] = null;
+
+        positionState = (int) (record >>> 18 & 0x7FFFFFFF);
+        teamTurn = (record >>> 49 & 1) == 0 ? TeamColor.WHITE : TeamColor.BLACK;
+        status = null;
+    }
+
+    /**
+     * Puts the pieces touched by a move back where they were before it, moving
+     * the rook back as well if the move was a castle
+     */
+    private void restoreSquares(int from, int to, int capturedSquare, ChessPiece pieceMoved, ChessPiece captured) {
+        gameBoard.addPiece(to, null);
+        gameBoard.addPiece(capturedSquare, captured);
+        gameBoard.addPiece(from, pieceMoved);
+        if (pieceMoved.getPieceType() == ChessPiece.PieceType.KING && Math.abs(to - from) == 2) {
+            int row = from & ~7;
+            if (to > from) {
+                gameBoard.addPiece(row + 7, gameBoard.getPiece(row + 5));
+                gameBoard.addPiece(row + 5, null);
+            } else {
+                gameBoard.addPiece(row, gameBoard.getPiece(row + 3));
+                gameBoard.addPiece(row + 3, null);
             }
-            possibleEnPassant.removeAll(toRemove);
+        }
+    }
+
+    private void applyMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        ChessPiece pieceMoving = gameBoard.getPiece(from);
+        TeamColor pieceColor = pieceMoving.getTeamColor();
+        boolean enPassantCapture = isEnPassantCapture(pieceMoving, from, to);
+        boolean resetsClock = pieceMoving.getPieceType() == ChessPiece.PieceType.PAWN
+                || gameBoard.getPiece(to) != null;
+
+        checkIfMoveBreaksCastle(from, to, pieceMoving);
+        setHalfmoveClock(resetsClock ? 0 : Math.min(getHalfmoveClock() + 1, MAX_CLOCK));
+        if (pieceColor == TeamColor.BLACK) {
+            setFullmoveNumber(Math.min(getFullmoveNumber() + 1, MAX_FULLMOVE));
+        }
+
+        ChessPiece.PieceType newPieceType = Move.promotion(move);
+        if (newPieceType == null) {
+            gameBoard.addPiece(to, pieceMoving);
+        } else {
+            gameBoard.addPiece(to, ChessPiece.of(pieceColor, newPieceType));
+        }
+        gameBoard.addPiece(from, null);
+        if (enPassantCapture) {
+            gameBoard.addPiece((from & ~7) | (to & 7), null);
         }
 
         // Check if it was a castle and moves the rook if it needs to
-        if (gameBoard.getPiece(endPosition).getPieceType() == ChessPiece.PieceType.KING) {
-            int distance = endPosition.getColumn() - startPosition.getColumn();
-            if (distance == 2) {
-                gameBoard.addPiece(new ChessPosition(endPosition.getRow(), 8), null);
-                gameBoard.addPiece(new ChessPosition(endPosition.getRow(), 6),
-                        new ChessPiece(teamTurn, ChessPiece.PieceType.ROOK));
-            } else if (distance == -2) {
-                gameBoard.addPiece(new ChessPosition(endPosition.getRow(), 1), null);
-                gameBoard.addPiece(new ChessPosition(endPosition.getRow(), 4),
-                        new ChessPiece(teamTurn, ChessPiece.PieceType.ROOK));
+        if (pieceMoving.getPieceType() == ChessPiece.PieceType.KING) {
+            int row = from & ~7;
+            if (to - from == 2) {
+                gameBoard.addPiece(row + 5, gameBoard.getPiece(row + 7));
+                gameBoard.addPiece(row + 7, null);
+            } else if (to - from == -2) {
+                gameBoard.addPiece(row + 3, gameBoard.getPiece(row));
+                gameBoard.addPiece(row, null);
             }
         }
 
-        if (teamTurn == TeamColor.WHITE){
-            teamTurn = TeamColor.BLACK;
+        if (pieceMoving.getPieceType() == ChessPiece.PieceType.PAWN && Math.abs(to - from) == 16) {
+            setEnPassantSquare((from + to) / 2);
         } else {
-            teamTurn = TeamColor.WHITE;
+            setEnPassantSquare(-1);
         }
 
+        teamTurn = pieceColor == TeamColor.WHITE ? TeamColor.BLACK : TeamColor.WHITE;
+        status = null;
     }
 
-    private void pawnMovedEnPassantCheck(ChessMove move, ChessPiece pieceInSpot) {
-        ChessPosition endPosition = move.getEndPosition();
-        if (endPosition.getColumn() > 1) {
-            ChessPosition leftPosition = new ChessPosition(endPosition.getRow(), endPosition.getColumn()-1);
-            ChessPiece pieceInLeft = gameBoard.getPiece(leftPosition);
-            if (pieceInLeft != null && pieceInLeft.getTeamColor() != pieceInSpot.getTeamColor()
-                    && pieceInLeft.getPieceType() == ChessPiece.PieceType.PAWN) {
-                ChessPosition enPassantEndPosition;
-                if (pieceInLeft.getTeamColor() == TeamColor.WHITE) {
-                    enPassantEndPosition = new ChessPosition(endPosition.getRow()+1, endPosition.getColumn());
-                } else {
-                    enPassantEndPosition = new ChessPosition(endPosition.getRow()-1, endPosition.getColumn());
-                }
-                ChessMove enPassantMove = new ChessMove(leftPosition, enPassantEndPosition, null);
-                possibleEnPassant.add(enPassantMove);
-            }
+    private boolean isEnPassantCapture(ChessPiece pieceMoving, int from, int to) {
+        return pieceMoving.getPieceType() == ChessPiece.PieceType.PAWN
+                && (from & 7) != (to & 7) && gameBoard.getPiece(to) == null;
+    }
+
+    /**
+     * @return the square a pawn can move to when capturing en passant, or -1 if
+     * no en passant capture is available
+     */
+    private int getEnPassantSquare() {
+        int file = (positionState >>> EN_PASSANT_SHIFT & 0xF) - 1;
+        if (file < 0) {
+            return -1;
         }
-        if (endPosition.getColumn() < 8) {
-            ChessPosition rightPosition = new ChessPosition(endPosition.getRow(),
-                    endPosition.getColumn()+1);
-            ChessPiece pieceInRight = gameBoard.getPiece(rightPosition);
-            if (pieceInRight != null && pieceInRight.getTeamColor() != pieceInSpot.getTeamColor()
-                    && pieceInRight.getPieceType() == ChessPiece.PieceType.PAWN) {
-                ChessPosition enPassantEndPosition;
-                if (pieceInRight.getTeamColor() == TeamColor.WHITE) {
-                    enPassantEndPosition = new ChessPosition(endPosition.getRow()+1,
-                            endPosition.getColumn());
-                } else {
-                    enPassantEndPosition = new ChessPosition(endPosition.getRow()-1,
-                            endPosition.getColumn());
-                }
-                ChessMove enPassantMove = new ChessMove(rightPosition, enPassantEndPosition, null);
-                possibleEnPassant.add(enPassantMove);
-            }
+        // The capture belongs to the team to move, behind the enemy pawn that just moved
+        return teamTurn == TeamColor.WHITE ? 40 + file : 16 + file;
+    }
+
+    /**
+     * Records the en passant capture target left by a pawn's double move. The
+     * target is only kept if an enemy pawn stands beside the pawn that moved.
+     *
+     * @param targetSquare the square the pawn passed over, or -1 for none
+     */
+    private void setEnPassantSquare(int targetSquare) {
+        positionState &= ~(0xF << EN_PASSANT_SHIFT);
+        if (targetSquare >= 0 && enPassantCaptors(targetSquare) != 0) {
+            positionState |= ((targetSquare & 7) + 1) << EN_PASSANT_SHIFT;
         }
     }
 
+    /**
+     * @return a bitboard of the enemy pawns standing beside the pawn that passed
+     * over targetSquare
+     */
+    private long enPassantCaptors(int targetSquare) {
+        // The pawn that moved is one row past the target square
+        ChessPiece pawn = gameBoard.getPiece(targetSquare < 32 ? targetSquare + 8 : targetSquare - 8);
+        if (pawn == null) {
+            return 0L;
+        }
+        TeamColor enemyColor = pawn.getTeamColor() == TeamColor.WHITE ? TeamColor.BLACK : TeamColor.WHITE;
+        // The squares beside the pawn are the ones it would attack from the target square
+        return Bitboards.pawnAttacks(pawn.getTeamColor(), targetSquare)
+                & gameBoard.getBitboard(enemyColor, ChessPiece.PieceType.PAWN);
+    }
+
+    /**
+     * @return the castling rights packed as bits: white right, white left,
+     * black right, black left
+     */
+    private int getCastlingRights() {
+        return positionState & CASTLING_MASK;
+    }
+
+    /**
+     * @return True if either team may still castle on either side
+     */
+    public boolean hasCastlingRights() {
+        return getCastlingRights() != 0;
+    }
+
+    private void setCastlingRights(int rights) {
+        positionState = (positionState & ~CASTLING_MASK) | (rights & CASTLING_MASK);
+    }
+
+    /**
+     * Gets the number of moves made since the last capture or pawn move, which
+     * stops counting at 255
+     *
+     * @return the halfmove clock
+     */
+    public int getHalfmoveClock() {
+        return positionState >>> CLOCK_SHIFT & MAX_CLOCK;
+    }
+
+    private void setHalfmoveClock(int clock) {
+        positionState = (positionState & ~(MAX_CLOCK << CLOCK_SHIFT)) | (clock << CLOCK_SHIFT);
+    }
+
+    /**
+     * Gets the number of the current full move, which starts at 1 and goes up
+     * after each black move
+     *
+     * @return the fullmove number
+     */
+    public int getFullmoveNumber() {
+        // Games saved before the number was tracked have 0 here
+        return Math.max(1, positionState >>> FULLMOVE_SHIFT & MAX_FULLMOVE);
+    }
+
+    private void setFullmoveNumber(int number) {
+        positionState = (positionState & ~(MAX_FULLMOVE << FULLMOVE_SHIFT)) | (number << FULLMOVE_SHIFT);
+    }
+
     /**
      * Checks if a move that was just made (or about to be made)
      * makes it so that the team can no longer castle
      *
-     * @param move the move being performed
+     * @param from the square the piece is moving from
+     * @param to the square the piece is moving to
+     * @param pieceMoving the piece being moved
      */
-    private void checkIfMoveBreaksCastle(ChessMove move) {
-        ChessPiece pieceMoving = gameBoard.getPiece(move.getStartPosition());
-        TeamColor pieceMovingColor = pieceMoving.getTeamColor();
+    private void checkIfMoveBreaksCastle(int from, int to, ChessPiece pieceMoving) {
         if (pieceMoving.getPieceType() == ChessPiece.PieceType.KING) {
-            if (pieceMovingColor == TeamColor.WHITE) {
-                whiteCastleLeft = false;
-                whiteCastleRight = false;
-            } else {
-                blackCastleLeft = false;
-                blackCastleRight = false;
-            }
-        } else if (pieceMoving.getPieceType() == ChessPiece.PieceType.ROOK) {
-            if (pieceMovingColor == TeamColor.WHITE) {
-                ChessPosition rightStartPosition = new ChessPosition(1, 8);
-                ChessPosition leftStartPosition = new ChessPosition(1, 1);
-                if (whiteCastleRight && move.getStartPosition().equals(rightStartPosition)) {
-                    whiteCastleRight = false;
-                } else if (whiteCastleLeft && move.getStartPosition().equals(leftStartPosition)) {
-                    whiteCastleLeft = false;
-                }
-            } else {
-                ChessPosition rightStartPosition = new ChessPosition(8, 8);
-                ChessPosition leftStartPosition = new ChessPosition(8, 1);
-                if (blackCastleRight && move.getStartPosition().equals(rightStartPosition)) {
-                    blackCastleRight = false;
-                } else if (blackCastleLeft && move.getStartPosition().equals(leftStartPosition)) {
-                    blackCastleLeft = false;
-                }
-            }
+            setCastlingRights(getCastlingRights() & (pieceMoving.getTeamColor() == TeamColor.WHITE ? 12 : 3));
         }
+        // A rook leaving its corner, or being captured there, ends castling on that side
+        checkIfCornerBreaksCastle(from);
+        checkIfCornerBreaksCastle(to);
     }
 
-    public Collection<ChessMove> getPossibleEnPassant() { return possibleEnPassant; }
+    private void checkIfCornerBreaksCastle(int square) {
+        if (square == 7) {
+            setCastlingRights(getCastlingRights() & ~1);
+        } else if (square == 0) {
+            setCastlingRights(getCastlingRights() & ~2);
+        } else if (square == 63) {
+            setCastlingRights(getCastlingRights() & ~4);
+        } else if (square == 56) {
+            setCastlingRights(getCastlingRights() & ~8);
+        }
+    }
+
+    /**
+     * Gets the en passant captures available to the team to move, worked out from
+     * the en passant file and the board
+     *
+     * @return a move for every pawn that can capture en passant
+     */
+    public Collection<ChessMove> getPossibleEnPassant() {
+        List<ChessMove> captures = new ArrayList<>(2);
+        int targetSquare = getEnPassantSquare();
+        if (targetSquare < 0) {
+            return captures;
+        }
+        long captors = enPassantCaptors(targetSquare);
+        while (captors != 0) {
+            int captorSquare = Long.numberOfTrailingZeros(captors);
+            captors &= captors - 1;
+            captures.add(new ChessMove(ChessPosition.ofSquare(captorSquare),
+                    ChessPosition.ofSquare(targetSquare), null));
+        }
+        return captures;
+    }
 
     /**
      * Determines if the given team is in check
@@ -385,28 +894,29 @@ public class ChessGame {
      * @param teamColor which team to check for check
      * @return True if the specified team is in check
      */
-    public boolean isInCheck(TeamColor teamColor) { 
-        ChessPosition myKingPosition = null;
-        Collection<ChessMove> enemyMoves = new ArrayList<>();
-        for (int checkingRow = 8; checkingRow > 0; checkingRow--) {
-            for (int checkingCol = 1; checkingCol < 9; checkingCol++) {
-                ChessPosition checkingPosition = new ChessPosition(checkingRow, checkingCol);
-                ChessPiece pieceInSpot = gameBoard.getPiece(checkingPosition);
-                if (pieceInSpot == null) {
-                    assert true;
-                } else if (pieceInSpot.getTeamColor() != teamColor) {
-                    Collection<ChessMove> pieceInSpotMoves = pieceInSpot.pieceMoves(gameBoard, checkingPosition);
-                    enemyMoves.addAll(pieceInSpotMoves);
-                } else if (pieceInSpot.getTeamColor() == teamColor
-                        && pieceInSpot.getPieceType() == ChessPiece.PieceType.KING) {
-                    myKingPosition = checkingPosition;
-                }
-            }
-        }
-        for (ChessMove move : enemyMoves) {
-            if (move.getEndPosition().equals(myKingPosition)) { return true; }
+    public boolean isInCheck(TeamColor teamColor) {
+        int kingSquare = gameBoard.getKingSquare(teamColor);
+        if (kingSquare < 0) {
+            return false;
         }
-        return false;
+        TeamColor enemyColor = teamColor == TeamColor.WHITE ? TeamColor.BLACK : TeamColor.WHITE;
+        return isSquareAttacked(kingSquare, enemyColor);
+    }
+
+    /**
+     * Determines if any piece of the given team attacks a square. Pawns count as
+     * attacking the squares they could capture on, whether or not anything is there.
+     *
+     * @param position the square to look at
+     * @param attackingColor the team whose pieces might attack the square
+     * @return True if a piece of attackingColor attacks the position
+     */
+    public boolean isSquareAttacked(ChessPosition position, TeamColor attackingColor) {
+        return isSquareAttacked(Bitboards.square(position), attackingColor);
+    }
+
+    private boolean isSquareAttacked(int square, TeamColor attackingColor) {
+        return MoveGenerator.attackers(gameBoard, square, attackingColor, gameBoard.getOccupancy()) != 0;
     }
 
     /**
@@ -416,13 +926,11 @@ public class ChessGame {
      * @return True if the specified team is in checkmate
      */
     public boolean isInCheckmate(TeamColor teamColor) {
-        if (!isInCheck(teamColor)) {
-            return false;
+        GameStatus knownStatus = teamColor == teamTurn ? cachedStatus() : null;
+        if (knownStatus != null) {
+            return knownStatus.getResult() == GameStatus.Result.CHECKMATE;
         }
-
-        Collection<ChessMove> myMoves = new ArrayList<>(findValidTeamMoves(teamColor));
-
-        return myMoves.isEmpty();
+        return isInCheck(teamColor) && !hasAnyLegalMove(teamColor);
     }
 
     /**
@@ -433,44 +941,208 @@ public class ChessGame {
      * @return True if the specified team is in stalemate, otherwise false
      */
     public boolean isInStalemate(TeamColor teamColor) {
-        if (isInCheck(teamColor)) {
-            return false;
+        GameStatus knownStatus = teamColor == teamTurn ? cachedStatus() : null;
+        if (knownStatus != null) {
+            return knownStatus.getResult() == GameStatus.Result.STALEMATE;
         }
-        Collection<ChessMove> myMoves = new ArrayList<>(findValidTeamMoves(teamColor));
+        return !isInCheck(teamColor) && !hasAnyLegalMove(teamColor);
+    }
 
-        return myMoves.isEmpty();
+    /**
+     * Determines if a team has at least one legal move, stopping at the first one
+     * found instead of listing them all
+     *
+     * @param teamColor the team to look at
+     * @return True if the team has a legal move
+     */
+    public boolean hasAnyLegalMove(TeamColor teamColor) {
+        return legalMoveIterator(teamColor).hasNext();
     }
 
-    private Collection<ChessMove> findValidTeamMoves(TeamColor teamColor) {
-        Collection<ChessMove> possibleMoves = new ArrayList<>();
-        for (int checkingRow = 8; checkingRow > 0; checkingRow--) {
-            for (int checkingCol = 1; checkingCol < 9; checkingCol++) {
-                ChessPosition checkingPosition = new ChessPosition(checkingRow, checkingCol);
-                ChessPiece pieceInSpot = gameBoard.getPiece(checkingPosition);
-                if (pieceInSpot == null) {
-                    assert true;
-                } else if (pieceInSpot.getTeamColor() == teamColor) {
-                    Collection<ChessMove> pieceInSpotMoves = validMoves(checkingPosition);
-                    possibleMoves.addAll(pieceInSpotMoves);
-                }
-            }
-        }
-        return possibleMoves;
+    /**
+     * Gets an iterator over a team's legal moves, packed with {@link Move}, that
+     * generates king moves, then captures, then quiet moves, each only when the
+     * moves before them have been used up. The game must not change while the
+     * iterator is in use.
+     *
+     * @param teamColor the team to get moves for
+     * @return a lazy iterator over the team's legal moves
+     */
+    public LegalMoveIterator legalMoveIterator(TeamColor teamColor) {
+        return new LegalMoveIterator(gameBoard, teamColor, getCastlingRights(), getEnPassantSquare());
     }
 
     /**
-     * Sets this game's chessboard with a given board
+     * Sets this game's chessboard with a given board, clearing the move history
      *
      * @param board the new board to use
      */
     public void setBoard(ChessBoard board) {
         gameBoard = board;
+        status = null;
+        // The history's moves no longer lead to this board
+        historyLength = 0;
+        historyPly = 0;
+        keyframes = null;
     }
 
     public ChessBoard getBoard() {
         return gameBoard;
     }
 
+    /**
+     * Writes the current position in Forsyth-Edwards Notation: piece placement,
+     * team to move, castling rights, en passant target, halfmove clock and
+     * fullmove number. Castling rights are only written while the king and rook
+     * are still on their starting squares, and the en passant target only when a
+     * pawn can actually capture there.
+     *
+     * @return the position as a FEN string
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder(gameBoard.toFen());
+        fen.append(teamTurn == TeamColor.WHITE ? " w " : " b ");
+
+        int rights = getCastlingRights();
+        int castlingStart = fen.length();
+        appendCastlingRight(fen, rights & 1, 4, 7, TeamColor.WHITE, 'K');
+        appendCastlingRight(fen, rights & 2, 4, 0, TeamColor.WHITE, 'Q');
+        appendCastlingRight(fen, rights & 4, 60, 63, TeamColor.BLACK, 'k');
+        appendCastlingRight(fen, rights & 8, 60, 56, TeamColor.BLACK, 'q');
+        if (fen.length() == castlingStart) {
+            fen.append('-');
+        }
+
+        int enPassantSquare = getEnPassantSquare();
+        if (enPassantSquare < 0) {
+            fen.append(" -");
+        } else {
+            fen.append(' ').append((char) ('a' + (enPassantSquare & 7))).append(Bitboards.row(enPassantSquare));
+        }
+        return fen.append(' ').append(getHalfmoveClock()).append(' ').append(getFullmoveNumber()).toString();
+    }
+
+    private void appendCastlingRight(StringBuilder fen, int right, int kingSquare, int rookSquare,
+                                     TeamColor color, char letter) {
+        // Boards read back from JSON hold their own piece objects, so compare with equals
+        if (right != 0 && ChessPiece.of(color, ChessPiece.PieceType.KING).equals(gameBoard.getPiece(kingSquare))
+                && ChessPiece.of(color, ChessPiece.PieceType.ROOK).equals(gameBoard.getPiece(rookSquare))) {
+            fen.append(letter);
+        }
+    }
+
+    /**
+     * Builds a game from a position in Forsyth-Edwards Notation. The halfmove
+     * clock and fullmove number may be left off, in which case they are 0 and 1.
+     *
+     * @param fen the position to load
+     * @return a new game in that position
+     * @throws InvalidFenException if fen is not a valid FEN string
+     */
+    public static ChessGame fromFen(String fen) throws InvalidFenException {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length != 4 && fields.length != 6) {
+            throw new InvalidFenException("Expected 4 or 6 fields but found " + fields.length);
+        }
+        ChessGame game = new ChessGame();
+        game.gameBoard = ChessBoard.fromFen(fields[0]);
+        game.teamTurn = switch (fields[1]) {
+            case "w" -> TeamColor.WHITE;
+            case "b" -> TeamColor.BLACK;
+            default -> throw new InvalidFenException("Bad team to move: " + fields[1]);
+        };
+
+        int rights = 0;
+        if (!fields[2].equals("-")) {
+            for (char c : fields[2].toCharArray()) {
+                int right = "KQkq".indexOf(c);
+                if (right < 0) {
+                    throw new InvalidFenException("Bad castling rights: " + fields[2]);
+                }
+                rights |= 1 << right;
+            }
+        }
+        game.positionState = 0;
+        game.setCastlingRights(rights);
+
+        if (!fields[3].equals("-")) {
+            String target = fields[3];
+            // White captures onto the sixth row, black onto the third
+            char expectedRow = game.teamTurn == TeamColor.WHITE ? '6' : '3';
+            if (target.length() != 2 || target.charAt(0) < 'a' || target.charAt(0) > 'h'
+                    || target.charAt(1) != expectedRow) {
+                throw new InvalidFenException("Bad en passant target: " + target);
+            }
+            game.setEnPassantSquare(Bitboards.square(expectedRow - '0', target.charAt(0) - 'a' + 1));
+        }
+
+        int halfmoveClock = 0;
+        int fullmoveNumber = 1;
+        if (fields.length == 6) {
+            try {
+                halfmoveClock = Integer.parseInt(fields[4]);
+                fullmoveNumber = Integer.parseInt(fields[5]);
+            } catch (NumberFormatException e) {
+                throw new InvalidFenException("Bad move counters: " + fields[4] + " " + fields[5]);
+            }
+            if (halfmoveClock < 0 || fullmoveNumber < 1) {
+                throw new InvalidFenException("Bad move counters: " + fields[4] + " " + fields[5]);
+            }
+        }
+        game.setHalfmoveClock(Math.min(halfmoveClock, MAX_CLOCK));
+        game.setFullmoveNumber(Math.min(fullmoveNumber, MAX_FULLMOVE));
+        return game;
+    }
+
+    /**
+     * Takes an immutable copy of the current position, which is safe to share
+     * between threads. The undo stack is not part of it.
+     *
+     * @return a snapshot of the board, turn and position state
+     */
+    public PositionSnapshot snapshot() {
+        byte[] squares = new byte[64];
+        long pieces = gameBoard.getOccupancy();
+        while (pieces != 0) {
+            int square = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            ChessPiece piece = gameBoard.getPiece(square);
+            squares[square] = (byte) (Bitboards.pieceIndex(piece.getTeamColor(), piece.getPieceType()) + 1);
+        }
+        return new PositionSnapshot(squares, teamTurn, positionState, gameOver);
+    }
+
+    /**
+     * Builds a new game in the position held by a snapshot
+     *
+     * @param snapshot the position to start from
+     * @return a game that can be played on without affecting anything else
+     */
+    public static ChessGame fromSnapshot(PositionSnapshot snapshot) {
+        ChessGame game = new ChessGame();
+        game.gameBoard = snapshot.toBoard();
+        game.teamTurn = snapshot.getTeamTurn();
+        game.positionState = snapshot.getPositionState();
+        game.gameOver = snapshot.isGameOver();
+        return game;
+    }
+
+    /**
+     * Makes an independent copy of the game with the same position and move
+     * history, so repetitions are still recognised in the copy. It must not be
+     * taken while moves played with doMove are waiting to be undone.
+     *
+     * @return a game that can be played on without affecting this one
+     */
+    public ChessGame copy() {
+        ChessGame copy = fromSnapshot(snapshot());
+        copy.history = Arrays.copyOf(history, historyLength);
+        copy.historyKeys = Arrays.copyOf(historyKeys(), historyLength);
+        copy.historyLength = historyLength;
+        copy.historyPly = historyPly;
+        return copy;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -485,7 +1157,56 @@ public class ChessGame {
 
     @Override
     public int hashCode() {
-        return Objects.hash(teamTurn, gameBoard);
+        // Only the board and turn take part in equals, so leave castling and en passant out
+        long key = gameBoard.getPieceKey();
+        if (teamTurn == TeamColor.BLACK) {
+            key ^= Zobrist.blackToMove();
+        }
+        return Long.hashCode(key);
+    }
+
+    /**
+     * Gets the Zobrist key of the current position, covering the pieces, the team
+     * to move, castling rights and the en passant file. The piece part is kept up to
+     * date by the board as moves are made, so this costs a few lookups.
+     *
+     * @return a 64-bit key that is equal for equal positions
+     */
+    public long getZobristKey() {
+        long key = gameBoard.getPieceKey() ^ Zobrist.castling(getCastlingRights());
+        if (teamTurn == TeamColor.BLACK) {
+            key ^= Zobrist.blackToMove();
+        }
+        int enPassantSquare = getEnPassantSquare();
+        if (enPassantSquare >= 0) {
+            key ^= Zobrist.enPassant(enPassantSquare);
+        }
+        return key;
+    }
+
+    /**
+     * Gets the key Polyglot opening books use for the current position (see
+     * {@link PolyglotKeys}). Unlike the Zobrist key it is worked out from the
+     * whole board each time, and it never changes with this program's hashing.
+     *
+     * @return the position's Polyglot key
+     */
+    public long getPolyglotKey() {
+        long key = PolyglotKeys.castling(getCastlingRights());
+        long pieces = gameBoard.getOccupancy();
+        while (pieces != 0) {
+            int square = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            key ^= PolyglotKeys.piece(gameBoard.getPiece(square), square);
+        }
+        int enPassantSquare = getEnPassantSquare();
+        if (enPassantSquare >= 0 && enPassantCaptors(enPassantSquare) != 0) {
+            key ^= PolyglotKeys.enPassant(enPassantSquare);
+        }
+        if (teamTurn == TeamColor.WHITE) {
+            key ^= PolyglotKeys.whiteToMove();
+        }
+        return key;
     }
 
     public boolean isGameOver() {
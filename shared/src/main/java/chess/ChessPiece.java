@@ -3,7 +3,6 @@ package chess;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Objects;
 
 /**
  * Represents a single chess piece
@@ -12,14 +11,34 @@ import java.util.Objects;
  * signature of the existing methods.
  */
 public class ChessPiece {
-    private PieceType type;
-    private ChessGame.TeamColor color;
+    private static final ChessPiece[] PIECES = new ChessPiece[12];
+
+    static {
+        for (ChessGame.TeamColor color : ChessGame.TeamColor.values()) {
+            for (PieceType type : PieceType.values()) {
+                PIECES[Bitboards.pieceIndex(color, type)] = new ChessPiece(color, type);
+            }
+        }
+    }
+
+    private final PieceType type;
+    private final ChessGame.TeamColor color;
 
     public ChessPiece(ChessGame.TeamColor pieceColor, ChessPiece.PieceType type) {
         this.color = pieceColor;
         this.type = type;
     }
 
+    /**
+     * Gets the shared piece for a color and type. Pieces are immutable, so one
+     * instance of each can sit on any number of squares and boards.
+     *
+     * @return a piece equal to new ChessPiece(pieceColor, type)
+     */
+    public static ChessPiece of(ChessGame.TeamColor pieceColor, ChessPiece.PieceType type) {
+        return PIECES[Bitboards.pieceIndex(pieceColor, type)];
+    }
+
     /**
      * The various different chess piece options
      */
@@ -51,7 +70,7 @@ public class ChessPiece {
 
     @Override
     public int hashCode() {
-        return Objects.hash(type, color);
+        return type.ordinal() * 2 + color.ordinal();
     }
 
     /**
@@ -71,108 +90,55 @@ public class ChessPiece {
     public Collection<ChessMove> pieceMoves(ChessBoard board, ChessPosition myPosition) {
         ChessPiece piece = board.getPiece(myPosition);
         List<ChessMove> possibleMoves = new ArrayList<>();
-        int row = myPosition.getRow();
-        int col = myPosition.getColumn();
+        int square = Bitboards.square(myPosition);
+        long ownPieces = board.getOccupancy(color);
 
         if (piece.getPieceType() == PieceType.BISHOP) {
-            int[][] directions = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
-            for (int i = 0; i < directions.length; i++) {
-                walk(row, col, directions[i][0], directions[i][1], possibleMoves, board, myPosition, 7);
-            }
+            addMoves(myPosition, SlidingAttacks.bishopAttacks(square, board.getOccupancy()) & ~ownPieces,
+                    possibleMoves);
         } else if (piece.getPieceType() == PieceType.ROOK) {
-            int[][] directions = {{1, 0}, {0, 1}, {-1, 0}, {0, -1}};
-            for (int i = 0; i < directions.length; i++) {
-                walk(row, col, directions[i][0], directions[i][1], possibleMoves, board, myPosition, 7);
-            }
+            addMoves(myPosition, SlidingAttacks.rookAttacks(square, board.getOccupancy()) & ~ownPieces,
+                    possibleMoves);
         } else if (piece.getPieceType() == PieceType.QUEEN) {
-            int[][] directions = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}, {1, 0}, {0, 1}, {-1, 0}, {0, -1}};
-            for (int i = 0; i < directions.length; i++) {
-                walk(row, col, directions[i][0], directions[i][1], possibleMoves, board, myPosition, 7);
-            }
+            addMoves(myPosition, SlidingAttacks.queenAttacks(square, board.getOccupancy()) & ~ownPieces,
+                    possibleMoves);
         } else if (piece.getPieceType() == PieceType.KING) {
-            int[][] directions = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}, {1, 0}, {0, 1}, {-1, 0}, {0, -1}};
-            for (int i = 0; i < directions.length; i++) {
-                walk(row, col, directions[i][0], directions[i][1], possibleMoves, board, myPosition, 1);
-            }
+            addMoves(myPosition, Bitboards.kingAttacks(square) & ~ownPieces, possibleMoves);
         } else if (piece.getPieceType() == PieceType.KNIGHT) {
-            int[][] directions = {{2, 1}, {2, -1}, {-2, 1}, {-2, -1}, {1, 2}, {1, -2}, {-1, 2}, {-1, -2}};
-            for (int i = 0; i < directions.length; i++) {
-                walk(row, col, directions[i][0], directions[i][1], possibleMoves, board, myPosition, 1);
-            }
+            addMoves(myPosition, Bitboards.knightAttacks(square) & ~ownPieces, possibleMoves);
         } else if (piece.getPieceType() == PieceType.PAWN) {
-            pawnWalk(row, col, possibleMoves, board, myPosition);
+            pawnMoves(square, ownPieces, possibleMoves, board, myPosition);
         }
 
         return possibleMoves;
     }
 
-    private void walk(int startRow, int startCol, int changeInRow, int changeInCol, List<ChessMove> possibleMoves,
-                      ChessBoard board, ChessPosition myPosition, int maxSteps) {
-        int checkingRow = startRow + changeInRow;
-        int checkingCol = startCol + changeInCol;
-        int steps = 0;
-        while (checkingRow > 0 && checkingRow < 9 && checkingCol > 0 && checkingCol < 9 && steps < maxSteps) {
-            ChessPosition checkingPosition = new ChessPosition(checkingRow, checkingCol);
-            ChessPiece pieceInSpot = board.getPiece(checkingPosition);
-            if (pieceInSpot == null || pieceInSpot.getTeamColor() != color) {
-                possibleMoves.add(new ChessMove(myPosition, checkingPosition, null));
-            }
-            if (pieceInSpot != null) {
-                    break;
-            }
-            checkingRow += changeInRow;
-            checkingCol += changeInCol;
-            steps += 1;
+    private void addMoves(ChessPosition myPosition, long targets, List<ChessMove> possibleMoves) {
+        while (targets != 0) {
+            int target = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            possibleMoves.add(new ChessMove(myPosition, ChessPosition.ofSquare(target), null));
         }
     }
 
-    private void pawnWalk(int startRow, int startCol, List<ChessMove> possibleMoves,
-                          ChessBoard board, ChessPosition myPosition) {
+    private void pawnMoves(int square, long ownPieces, List<ChessMove> possibleMoves,
+                           ChessBoard board, ChessPosition myPosition) {
+        long empty = ~board.getOccupancy();
+        long enemyPieces = board.getOccupancy() & ~ownPieces;
+        long pawn = 1L << square;
+        long pushes;
         if (color == ChessGame.TeamColor.WHITE) {
-            boolean openInFront = false;
-            if (startRow < 8) {
-                openInFront = pawnCheckWalk(startRow+1, startCol, possibleMoves, board, myPosition);
-                pawnCheckCapture(startRow+1, startCol, possibleMoves, board, myPosition);
-            }
-            if (startRow == 2 && openInFront) {
-                pawnCheckWalk(startRow+2, startCol, possibleMoves, board, myPosition);
-            }
+            long singlePush = (pawn << 8) & empty;
+            pushes = singlePush | (((singlePush & Bitboards.RANK_3) << 8) & empty);
         } else {
-            boolean openInFront = false;
-            if (startRow > 1) {
-                openInFront = pawnCheckWalk(startRow-1, startCol, possibleMoves, board, myPosition);
-                pawnCheckCapture(startRow-1, startCol, possibleMoves, board, myPosition);
-            }
-            if (startRow == 7 && openInFront) {
-                pawnCheckWalk(startRow-2, startCol, possibleMoves, board, myPosition);
-            }
+            long singlePush = (pawn >>> 8) & empty;
+            pushes = singlePush | (((singlePush & Bitboards.RANK_6) >>> 8) & empty);
         }
-    }
-
-    private boolean pawnCheckWalk(int row, int col, List<ChessMove> possibleMoves, ChessBoard board, ChessPosition myPosition) {
-        ChessPosition checkingPosition = new ChessPosition(row, col);
-        ChessPiece pieceInSpot = board.getPiece(checkingPosition);
-        if (pieceInSpot == null) {
-            pawnAddPosition(myPosition, checkingPosition, possibleMoves);
-            return true;
-        }
-        return false;
-    }
-
-    private void pawnCheckCapture(int row, int startCol, List<ChessMove> possibleMoves, ChessBoard board, ChessPosition myPosition) {
-        if (startCol > 1) {
-            ChessPosition leftCapturePosition = new ChessPosition(row, startCol-1);
-            ChessPiece capturePiece = board.getPiece(leftCapturePosition);
-            if (capturePiece != null && capturePiece.getTeamColor() != color) {
-                pawnAddPosition(myPosition, leftCapturePosition, possibleMoves);
-            }
-        }
-        if (startCol < 8) {
-            ChessPosition rightCapturePosition = new ChessPosition(row, startCol+1);
-            ChessPiece capturePiece = board.getPiece(rightCapturePosition);
-            if (capturePiece != null && capturePiece.getTeamColor() != color) {
-                pawnAddPosition(myPosition, rightCapturePosition, possibleMoves);
-            }
+        long targets = pushes | (Bitboards.pawnAttacks(color, square) & enemyPieces);
+        while (targets != 0) {
+            int target = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            pawnAddPosition(myPosition, ChessPosition.ofSquare(target), possibleMoves);
         }
     }
 
@@ -1,7 +1,5 @@
 package chess;
 
-import java.util.Objects;
-
 /**
  * Represents a single square position on a chess board
  * <p>
@@ -9,14 +7,46 @@ import java.util.Objects;
  * signature of the existing methods.
  */
 public class ChessPosition {
-    private int row;
-    private int column;
+    private static final ChessPosition[] POSITIONS = new ChessPosition[64];
+
+    static {
+        for (int square = 0; square < 64; square++) {
+            POSITIONS[square] = new ChessPosition(Bitboards.row(square), Bitboards.column(square));
+        }
+    }
+
+    private final int row;
+    private final int column;
 
     public ChessPosition(int row, int col) {
         this.row = row;
         this.column = col;
     }
 
+    /**
+     * Gets the shared position for a square, so callers don't allocate a new one
+     * for every square they look at. Positions off the board are still created
+     * fresh so they behave exactly as they would through the constructor.
+     *
+     * @param row 1-based row, 1 codes for the bottom row
+     * @param col 1-based column, 1 codes for the left column
+     * @return a position equal to new ChessPosition(row, col)
+     */
+    public static ChessPosition of(int row, int col) {
+        if (row < 1 || row > 8 || col < 1 || col > 8) {
+            return new ChessPosition(row, col);
+        }
+        return POSITIONS[(row - 1) * 8 + (col - 1)];
+    }
+
+    /**
+     * @param square the square index, see {@link Bitboards#square(int, int)}
+     * @return the shared position for a square index
+     */
+    public static ChessPosition ofSquare(int square) {
+        return POSITIONS[square];
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -31,7 +61,7 @@ public class ChessPosition {
 
     @Override
     public int hashCode() {
-        return Objects.hash(row, column);
+        return 31 * row + column;
     }
 
     /**
@@ -0,0 +1,111 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of what the team to move can do in one position: its legal moves
+ * grouped by the square they start on, whether it is in check, and whether the
+ * game has ended by checkmate or a draw. ChessGame builds one per position and
+ * hands the same snapshot out until the position changes, so asking for moves,
+ * check, checkmate and stalemate in a row only generates moves once.
+ */
+public final class GameStatus {
+    /**
+     * How the game stands for the team to move
+     */
+    public enum Result {
+        IN_PROGRESS,
+        CHECKMATE,
+        STALEMATE,
+        REPETITION,
+        FIFTY_MOVES,
+        INSUFFICIENT_MATERIAL,
+        // An endgame tablebase shows that neither team can win with best play
+        DEAD_POSITION;
+
+        /**
+         * @return True if the game ended without a winner
+         */
+        public boolean isDraw() {
+            return this == STALEMATE || this == REPETITION || this == FIFTY_MOVES || this == INSUFFICIENT_MATERIAL
+                    || this == DEAD_POSITION;
+        }
+    }
+
+    private final ChessGame.TeamColor teamToMove;
+    private final boolean inCheck;
+    private final Result result;
+    private final List<ChessMove> legalMoves;
+    private final Map<ChessPosition, List<ChessMove>> movesByOrigin = new HashMap<>();
+
+    GameStatus(ChessGame.TeamColor teamToMove, boolean inCheck, MoveList moves, Result draw) {
+        this.teamToMove = teamToMove;
+        this.inCheck = inCheck;
+        this.legalMoves = Collections.unmodifiableList(moves.toChessMoves());
+        for (ChessMove move : legalMoves) {
+            movesByOrigin.computeIfAbsent(move.getStartPosition(), origin -> new ArrayList<>()).add(move);
+        }
+        // Running out of moves decides the game before any other kind of draw
+        if (legalMoves.isEmpty()) {
+            result = inCheck ? Result.CHECKMATE : Result.STALEMATE;
+        } else {
+            result = draw == null ? Result.IN_PROGRESS : draw;
+        }
+    }
+
+    /**
+     * @return the team this snapshot describes
+     */
+    public ChessGame.TeamColor getTeamToMove() {
+        return teamToMove;
+    }
+
+    /**
+     * @return True if the team to move is in check
+     */
+    public boolean isInCheck() {
+        return inCheck;
+    }
+
+    public Result getResult() {
+        return result;
+    }
+
+    /**
+     * @return True if the game has ended by checkmate or any kind of draw
+     */
+    public boolean isGameOver() {
+        return result != Result.IN_PROGRESS;
+    }
+
+    /**
+     * @return True if the team to move has at least one legal move
+     */
+    public boolean hasLegalMove() {
+        return !legalMoves.isEmpty();
+    }
+
+    /**
+     * @return every legal move of the team to move, which cannot be modified
+     */
+    public Collection<ChessMove> getLegalMoves() {
+        return legalMoves;
+    }
+
+    /**
+     * Gets the legal moves of the piece on one square
+     *
+     * @param origin the square the moves start on
+     * @return the moves, which cannot be modified, or an empty collection if
+     * the team to move has no piece there that can move
+     */
+    public Collection<ChessMove> getMoves(ChessPosition origin) {
+        List<ChessMove> moves = movesByOrigin.get(origin);
+        return moves == null ? List.of() : Collections.unmodifiableList(moves);
+    }
+}
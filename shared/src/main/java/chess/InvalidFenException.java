@@ -0,0 +1,13 @@
+package chess;
+
+/**
+ * Indicates a FEN string could not be read as a chess position
+ */
+public class InvalidFenException extends Exception {
+
+    public InvalidFenException() {}
+
+    public InvalidFenException(String message) {
+        super(message);
+    }
+}
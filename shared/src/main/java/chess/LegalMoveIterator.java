@@ -0,0 +1,101 @@
+package chess;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Hands out the legal moves of one team, packed with {@link Move}, generating
+ * them a stage at a time only when the moves already generated run out: first
+ * king moves, then captures, then quiet moves. Code that only needs to know
+ * whether a legal move exists usually stops after the first stage or two.
+ * <p>
+ * The iterator reads the board as it is when each stage is generated, so the
+ * position must not change while it is in use.
+ */
+public final class LegalMoveIterator implements PrimitiveIterator.OfInt {
+    private enum Stage { KING, CAPTURES, QUIETS, DONE }
+
+    private final ChessBoard board;
+    private final ChessGame.TeamColor color;
+    private final int castlingRights;
+    private final int enPassantSquare;
+    private final MoveList moves = new MoveList(32);
+    private Stage stage = Stage.KING;
+    private int next;
+
+    private int kingSquare = -1;
+    private long checkers;
+    private long checkMask = ~0L;
+    private long pinned;
+
+    LegalMoveIterator(ChessBoard board, ChessGame.TeamColor color, int castlingRights, int enPassantSquare) {
+        this.board = board;
+        this.color = color;
+        this.castlingRights = castlingRights;
+        this.enPassantSquare = enPassantSquare;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == moves.size()) {
+            if (stage == Stage.DONE) {
+                return false;
+            }
+            moves.clear();
+            next = 0;
+            generateStage();
+        }
+        return true;
+    }
+
+    @Override
+    public int nextInt() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return moves.get(next++);
+    }
+
+    private void generateStage() {
+        long occupied = board.getOccupancy();
+        switch (stage) {
+            case KING -> {
+                stage = Stage.CAPTURES;
+                kingSquare = board.getKingSquare(color);
+                if (kingSquare < 0) {
+                    return;
+                }
+                ChessGame.TeamColor enemyColor = color == ChessGame.TeamColor.WHITE
+                        ? ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE;
+                checkers = MoveGenerator.attackers(board, kingSquare, enemyColor, occupied);
+                MoveGenerator.addKingMoves(board, kingSquare, enemyColor, board.getOccupancy(color), occupied, moves);
+                if (Long.bitCount(checkers) > 1) {
+                    // Only the king can get out of a double check
+                    stage = Stage.DONE;
+                    return;
+                }
+                if (checkers != 0) {
+                    checkMask = checkers | Bitboards.between(kingSquare, Long.numberOfTrailingZeros(checkers));
+                }
+                pinned = MoveGenerator.pinnedPieces(board, kingSquare, enemyColor, board.getOccupancy(color),
+                        occupied);
+            }
+            case CAPTURES -> {
+                stage = Stage.QUIETS;
+                long enemyPieces = occupied & ~board.getOccupancy(color);
+                MoveGenerator.addPieceMoves(board, color, kingSquare, pinned, checkMask, ~0L, enemyPieces, moves);
+                if (enPassantSquare >= 0) {
+                    MoveGenerator.addEnPassantMoves(board, color, enPassantSquare, kingSquare, occupied, ~0L, moves);
+                }
+            }
+            case QUIETS -> {
+                stage = Stage.DONE;
+                MoveGenerator.addPieceMoves(board, color, kingSquare, pinned, checkMask, ~0L, ~occupied, moves);
+                if (kingSquare >= 0 && checkers == 0) {
+                    MoveGenerator.addCastles(board, color, castlingRights, kingSquare, occupied, moves);
+                }
+            }
+            case DONE -> { }
+        }
+    }
+}
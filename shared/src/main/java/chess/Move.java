@@ -0,0 +1,74 @@
+package chess;
+
+/**
+ * Packs a chess move into a single int so move lists can be plain int arrays.
+ * <p>
+ * Bits 0-5 hold the start square and bits 6-11 the end square (see
+ * {@link Bitboards#square(int, int)}), bits 12-14 the promotion piece (0 for
+ * none, otherwise the PieceType ordinal plus one) and bits 15-18 flags
+ * describing the kind of move. Flags are filled in by the move generator and
+ * are not needed to play the move, so a move built from a ChessMove has none.
+ */
+public final class Move {
+    public static final int CAPTURE = 1;
+    public static final int EN_PASSANT = 1 << 1;
+    public static final int CASTLE = 1 << 2;
+    public static final int DOUBLE_PUSH = 1 << 3;
+
+    private static final ChessPiece.PieceType[] PIECE_TYPES = ChessPiece.PieceType.values();
+
+    private Move() { }
+
+    /**
+     * @param promotion the piece type to promote to, or null for none
+     * @param flags any of CAPTURE, EN_PASSANT, CASTLE and DOUBLE_PUSH
+     * @return the packed move
+     */
+    public static int encode(int from, int to, ChessPiece.PieceType promotion, int flags) {
+        int promotionBits = promotion == null ? 0 : promotion.ordinal() + 1;
+        return from | to << 6 | promotionBits << 12 | flags << 15;
+    }
+
+    /**
+     * @return the packed form of a ChessMove, without flags
+     */
+    public static int of(ChessMove move) {
+        return encode(Bitboards.square(move.getStartPosition()), Bitboards.square(move.getEndPosition()),
+                move.getPromotionPiece(), 0);
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return move >>> 6 & 63;
+    }
+
+    /**
+     * @return the piece type to promote to, or null if the move is not a promotion
+     */
+    public static ChessPiece.PieceType promotion(int move) {
+        int promotionBits = move >>> 12 & 7;
+        return promotionBits == 0 ? null : PIECE_TYPES[promotionBits - 1];
+    }
+
+    public static int flags(int move) {
+        return move >>> 15 & 15;
+    }
+
+    public static boolean isCapture(int move) {
+        return (flags(move) & CAPTURE) != 0;
+    }
+
+    /**
+     * @return the move with its flags removed, for comparing moves by squares and promotion only
+     */
+    public static int withoutFlags(int move) {
+        return move & 0x7FFF;
+    }
+
+    public static ChessMove toChessMove(int move) {
+        return new ChessMove(ChessPosition.ofSquare(from(move)), ChessPosition.ofSquare(to(move)), promotion(move));
+    }
+}
@@ -0,0 +1,396 @@
+package chess;
+
+/**
+ * Generates only legal moves, without playing any of them on the board.
+ * <p>
+ * Before producing moves it works out which enemy pieces give check, which of
+ * the mover's pieces are pinned to their king, and the set of squares that
+ * block or capture a single checker. Every piece is then limited to those
+ * squares, and pinned pieces to the line through their king. King moves are
+ * tested against the enemy's attacks with the king lifted off the board, and
+ * en passant, the one move that removes two pieces from a line, is checked
+ * against the board as it would look afterward.
+ */
+final class MoveGenerator {
+    private static final ChessPiece.PieceType[] PROMOTIONS = {
+            ChessPiece.PieceType.BISHOP,
+            ChessPiece.PieceType.ROOK,
+            ChessPiece.PieceType.KNIGHT,
+            ChessPiece.PieceType.QUEEN
+    };
+
+    private MoveGenerator() { }
+
+    /**
+     * Adds every legal move of a team to moves, packed with {@link Move}
+     *
+     * @param board the board to generate moves on
+     * @param color the team to generate moves for
+     * @param castlingRights castling rights, bits: white right, white left, black right, black left
+     * @param enPassantSquare the en passant target square, or -1 for none
+     * @param fromMask only moves starting on these squares are generated
+     * @param moves where to add the moves
+     */
+    static void generate(ChessBoard board, ChessGame.TeamColor color, int castlingRights, int enPassantSquare,
+                         long fromMask, MoveList moves) {
+        ChessGame.TeamColor enemyColor = opposite(color);
+        long ownPieces = board.getOccupancy(color);
+        long occupied = board.getOccupancy();
+        long king = board.getBitboard(color, ChessPiece.PieceType.KING);
+
+        long checkers = 0L;
+        long checkMask = ~0L;
+        long pinned = 0L;
+        int kingSquare = -1;
+        if (king != 0) {
+            kingSquare = Long.numberOfTrailingZeros(king);
+            checkers = attackers(board, kingSquare, enemyColor, occupied);
+            if ((king & fromMask) != 0) {
+                addKingMoves(board, kingSquare, enemyColor, ownPieces, occupied, moves);
+            }
+            if (Long.bitCount(checkers) > 1) {
+                // Only the king can get out of a double check
+                return;
+            }
+            if (checkers != 0) {
+                checkMask = checkers | Bitboards.between(kingSquare, Long.numberOfTrailingZeros(checkers));
+            }
+            pinned = pinnedPieces(board, kingSquare, enemyColor, ownPieces, occupied);
+        }
+
+        addPieceMoves(board, color, kingSquare, pinned, checkMask, fromMask, ~0L, moves);
+        if (enPassantSquare >= 0) {
+            addEnPassantMoves(board, color, enPassantSquare, kingSquare, occupied, fromMask, moves);
+        }
+        if (checkers == 0 && (king & fromMask) != 0) {
+            addCastles(board, color, castlingRights, kingSquare, occupied, moves);
+        }
+    }
+
+    /**
+     * Adds the legal captures of a team to moves, packed with {@link Move},
+     * including en passant. Quiet moves, castles and promotions that don't
+     * capture are left out.
+     *
+     * @param board the board to generate moves on
+     * @param color the team to generate moves for
+     * @param enPassantSquare the en passant target square, or -1 for none
+     * @param moves where to add the moves
+     */
+    static void generateCaptures(ChessBoard board, ChessGame.TeamColor color, int enPassantSquare,
+                                 MoveList moves) {
+        ChessGame.TeamColor enemyColor = opposite(color);
+        long ownPieces = board.getOccupancy(color);
+        long occupied = board.getOccupancy();
+        long king = board.getBitboard(color, ChessPiece.PieceType.KING);
+
+        long checkMask = ~0L;
+        long pinned = 0L;
+        int kingSquare = -1;
+        if (king != 0) {
+            kingSquare = Long.numberOfTrailingZeros(king);
+            long checkers = attackers(board, kingSquare, enemyColor, occupied);
+            int firstKingMove = moves.size();
+            addKingMoves(board, kingSquare, enemyColor, ownPieces, occupied, moves);
+            // King moves have no target mask, so drop the quiet ones afterward
+            int kept = firstKingMove;
+            for (int i = firstKingMove; i < moves.size(); i++) {
+                if (Move.isCapture(moves.get(i))) {
+                    moves.set(kept++, moves.get(i));
+                }
+            }
+            moves.truncate(kept);
+            if (Long.bitCount(checkers) > 1) {
+                return;
+            }
+            if (checkers != 0) {
+                checkMask = checkers | Bitboards.between(kingSquare, Long.numberOfTrailingZeros(checkers));
+            }
+            pinned = pinnedPieces(board, kingSquare, enemyColor, ownPieces, occupied);
+        }
+
+        addPieceMoves(board, color, kingSquare, pinned, checkMask, ~0L, occupied & ~ownPieces, moves);
+        if (enPassantSquare >= 0) {
+            addEnPassantMoves(board, color, enPassantSquare, kingSquare, occupied, ~0L, moves);
+        }
+    }
+
+    /**
+     * Checks one move without generating the others: first that the piece can
+     * reach the target at all, then that the target is free of its own pieces,
+     * then that its king is safe afterward. Castling and en passant are rare
+     * enough that they are checked by generating the piece's special moves.
+     *
+     * @param board the board the move is played on
+     * @param color the team making the move
+     * @param castlingRights castling rights, bits: white right, white left, black right, black left
+     * @param enPassantSquare the en passant target square, or -1 for none
+     * @param move the move packed with {@link Move}; flags are ignored
+     * @param scratch a buffer that may be cleared and used for castling and en passant
+     * @return True if the move is legal for color
+     */
+    static boolean isLegal(ChessBoard board, ChessGame.TeamColor color, int castlingRights, int enPassantSquare,
+                           int move, MoveList scratch) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        ChessPiece piece = board.getPiece(from);
+        if (piece == null || piece.getTeamColor() != color) {
+            return false;
+        }
+        ChessPiece.PieceType type = piece.getPieceType();
+        ChessPiece.PieceType promotion = Move.promotion(move);
+        boolean lastRow = to >= 56 || to < 8;
+        if (type == ChessPiece.PieceType.PAWN && lastRow) {
+            if (promotion == null || promotion == ChessPiece.PieceType.PAWN
+                    || promotion == ChessPiece.PieceType.KING) {
+                return false;
+            }
+        } else if (promotion != null) {
+            return false;
+        }
+
+        ChessGame.TeamColor enemyColor = opposite(color);
+        long ownPieces = board.getOccupancy(color);
+        long occupied = board.getOccupancy();
+        long toBit = 1L << to;
+        int kingSquare = board.getKingSquare(color);
+
+        if (type == ChessPiece.PieceType.KING) {
+            if (Math.abs(to - from) == 2 && (from >>> 3) == (to >>> 3)) {
+                scratch.clear();
+                if (attackers(board, from, enemyColor, occupied) == 0) {
+                    addCastles(board, color, castlingRights, from, occupied, scratch);
+                }
+                return scratch.contains(move);
+            }
+            return (Bitboards.kingAttacks(from) & ~ownPieces & toBit) != 0
+                    && attackers(board, to, enemyColor, occupied & ~(1L << from)) == 0;
+        }
+        if (type == ChessPiece.PieceType.PAWN && to == enPassantSquare && (from & 7) != (to & 7)) {
+            scratch.clear();
+            addEnPassantMoves(board, color, enPassantSquare, kingSquare, occupied, 1L << from, scratch);
+            return scratch.contains(move);
+        }
+
+        long reachable = switch (type) {
+            case PAWN -> pawnTargets(board, from, color, occupied);
+            case KNIGHT -> Bitboards.knightAttacks(from);
+            case BISHOP -> SlidingAttacks.bishopAttacks(from, occupied);
+            case ROOK -> SlidingAttacks.rookAttacks(from, occupied);
+            case QUEEN -> SlidingAttacks.queenAttacks(from, occupied);
+            case KING -> 0L;
+        };
+        if ((reachable & ~ownPieces & toBit) == 0) {
+            return false;
+        }
+        if (kingSquare < 0) {
+            return true;
+        }
+
+        long checkers = attackers(board, kingSquare, enemyColor, occupied);
+        if (checkers != 0) {
+            if (Long.bitCount(checkers) > 1) {
+                return false;
+            }
+            long checkMask = checkers | Bitboards.between(kingSquare, Long.numberOfTrailingZeros(checkers));
+            if ((checkMask & toBit) == 0) {
+                return false;
+            }
+        }
+        long pinned = pinnedPieces(board, kingSquare, enemyColor, ownPieces, occupied);
+        return (pinned & (1L << from)) == 0 || (Bitboards.line(kingSquare, from) & toBit) != 0;
+    }
+
+    /**
+     * Adds the legal moves of every piece but the king, limited to the given
+     * squares. En passant and castling are left to their own methods.
+     *
+     * @param kingSquare the square of the team's king, or -1 if it has none
+     * @param pinned the team's pieces that are pinned to its king
+     * @param checkMask the squares that stop a check, or every square when not in check
+     * @param fromMask only pieces on these squares are moved
+     * @param targetMask only moves ending on these squares are added
+     */
+    static void addPieceMoves(ChessBoard board, ChessGame.TeamColor color, int kingSquare, long pinned,
+                              long checkMask, long fromMask, long targetMask, MoveList moves) {
+        long ownPieces = board.getOccupancy(color);
+        long occupied = board.getOccupancy();
+        long pieces = ownPieces & ~board.getBitboard(color, ChessPiece.PieceType.KING) & fromMask;
+        while (pieces != 0) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            long allowed = checkMask & targetMask;
+            if ((pinned & (1L << from)) != 0) {
+                allowed &= Bitboards.line(kingSquare, from);
+            }
+            ChessPiece.PieceType type = board.getPiece(from).getPieceType();
+            long targets = switch (type) {
+                case PAWN -> pawnTargets(board, from, color, occupied) & allowed;
+                case KNIGHT -> Bitboards.knightAttacks(from) & ~ownPieces & allowed;
+                case BISHOP -> SlidingAttacks.bishopAttacks(from, occupied) & ~ownPieces & allowed;
+                case ROOK -> SlidingAttacks.rookAttacks(from, occupied) & ~ownPieces & allowed;
+                case QUEEN -> SlidingAttacks.queenAttacks(from, occupied) & ~ownPieces & allowed;
+                case KING -> 0L;
+            };
+            if (type == ChessPiece.PieceType.PAWN) {
+                addPawnMoves(from, targets, occupied, moves);
+            } else {
+                addMoves(from, targets, occupied, moves);
+            }
+        }
+    }
+
+    /**
+     * @return a bitboard of the pieces of attackingColor that attack square, with
+     * sliders blocked by the given occupancy
+     */
+    static long attackers(ChessBoard board, int square, ChessGame.TeamColor attackingColor, long occupied) {
+        long queens = board.getBitboard(attackingColor, ChessPiece.PieceType.QUEEN);
+        return (Bitboards.pawnAttacks(opposite(attackingColor), square)
+                        & board.getBitboard(attackingColor, ChessPiece.PieceType.PAWN))
+                | (Bitboards.knightAttacks(square) & board.getBitboard(attackingColor, ChessPiece.PieceType.KNIGHT))
+                | (Bitboards.kingAttacks(square) & board.getBitboard(attackingColor, ChessPiece.PieceType.KING))
+                | (SlidingAttacks.bishopAttacks(square, occupied)
+                        & (board.getBitboard(attackingColor, ChessPiece.PieceType.BISHOP) | queens))
+                | (SlidingAttacks.rookAttacks(square, occupied)
+                        & (board.getBitboard(attackingColor, ChessPiece.PieceType.ROOK) | queens));
+    }
+
+    static long pinnedPieces(ChessBoard board, int kingSquare, ChessGame.TeamColor enemyColor,
+                             long ownPieces, long occupied) {
+        long enemyPieces = occupied & ~ownPieces;
+        long queens = board.getBitboard(enemyColor, ChessPiece.PieceType.QUEEN);
+        // Enemy sliders that would see the king if only enemy pieces were on the board
+        long snipers = (SlidingAttacks.rookAttacks(kingSquare, enemyPieces)
+                        & (board.getBitboard(enemyColor, ChessPiece.PieceType.ROOK) | queens))
+                | (SlidingAttacks.bishopAttacks(kingSquare, enemyPieces)
+                        & (board.getBitboard(enemyColor, ChessPiece.PieceType.BISHOP) | queens));
+        long pinned = 0L;
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = Bitboards.between(kingSquare, sniper) & occupied;
+            if (Long.bitCount(blockers) == 1) {
+                pinned |= blockers & ownPieces;
+            }
+        }
+        return pinned;
+    }
+
+    static void addKingMoves(ChessBoard board, int kingSquare, ChessGame.TeamColor enemyColor,
+                             long ownPieces, long occupied, MoveList moves) {
+        long targets = Bitboards.kingAttacks(kingSquare) & ~ownPieces;
+        // Lift the king off the board so a slider checking it also covers the squares behind it
+        long occupiedWithoutKing = occupied & ~(1L << kingSquare);
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            if (attackers(board, to, enemyColor, occupiedWithoutKing) == 0) {
+                moves.add(Move.encode(kingSquare, to, null, captureFlag(to, occupied)));
+            }
+        }
+    }
+
+    private static long pawnTargets(ChessBoard board, int from, ChessGame.TeamColor color, long occupied) {
+        long pawn = 1L << from;
+        long empty = ~occupied;
+        long pushes;
+        if (color == ChessGame.TeamColor.WHITE) {
+            long singlePush = (pawn << 8) & empty;
+            pushes = singlePush | (((singlePush & Bitboards.RANK_3) << 8) & empty);
+        } else {
+            long singlePush = (pawn >>> 8) & empty;
+            pushes = singlePush | (((singlePush & Bitboards.RANK_6) >>> 8) & empty);
+        }
+        return pushes | (Bitboards.pawnAttacks(color, from) & board.getOccupancy(opposite(color)));
+    }
+
+    static void addEnPassantMoves(ChessBoard board, ChessGame.TeamColor color, int enPassantSquare,
+                                  int kingSquare, long occupied, long fromMask,
+                                  MoveList moves) {
+        // A target on the sixth row is for white to capture, on the third row for black
+        boolean forWhite = enPassantSquare >= 40;
+        if (forWhite != (color == ChessGame.TeamColor.WHITE)) {
+            return;
+        }
+        int capturedSquare = forWhite ? enPassantSquare - 8 : enPassantSquare + 8;
+        ChessGame.TeamColor enemyColor = opposite(color);
+        if ((board.getBitboard(enemyColor, ChessPiece.PieceType.PAWN) & (1L << capturedSquare)) == 0) {
+            return;
+        }
+        long captors = Bitboards.pawnAttacks(enemyColor, enPassantSquare)
+                & board.getBitboard(color, ChessPiece.PieceType.PAWN) & fromMask;
+        while (captors != 0) {
+            int from = Long.numberOfTrailingZeros(captors);
+            captors &= captors - 1;
+            if (kingSquare >= 0) {
+                long occupiedAfter = (occupied & ~(1L << from) & ~(1L << capturedSquare)) | (1L << enPassantSquare);
+                long checkersAfter = attackers(board, kingSquare, enemyColor, occupiedAfter) & ~(1L << capturedSquare);
+                if (checkersAfter != 0) {
+                    continue;
+                }
+            }
+            moves.add(Move.encode(from, enPassantSquare, null, Move.CAPTURE | Move.EN_PASSANT));
+        }
+    }
+
+    static void addCastles(ChessBoard board, ChessGame.TeamColor color, int castlingRights,
+                           int kingSquare, long occupied, MoveList moves) {
+        int homeSquare = color == ChessGame.TeamColor.WHITE ? 4 : 60;
+        if (kingSquare != homeSquare) {
+            return;
+        }
+        int rightBit = color == ChessGame.TeamColor.WHITE ? 1 : 4;
+        int leftBit = color == ChessGame.TeamColor.WHITE ? 2 : 8;
+        ChessGame.TeamColor enemyColor = opposite(color);
+        long rooks = board.getBitboard(color, ChessPiece.PieceType.ROOK);
+
+        if ((castlingRights & rightBit) != 0 && (rooks & (1L << (kingSquare + 3))) != 0
+                && (occupied & (3L << (kingSquare + 1))) == 0
+                && attackers(board, kingSquare + 1, enemyColor, occupied) == 0
+                && attackers(board, kingSquare + 2, enemyColor, occupied) == 0) {
+            moves.add(Move.encode(kingSquare, kingSquare + 2, null, Move.CASTLE));
+        }
+        if ((castlingRights & leftBit) != 0 && (rooks & (1L << (kingSquare - 4))) != 0
+                && (occupied & (7L << (kingSquare - 3))) == 0
+                && attackers(board, kingSquare - 1, enemyColor, occupied) == 0
+                && attackers(board, kingSquare - 2, enemyColor, occupied) == 0) {
+            moves.add(Move.encode(kingSquare, kingSquare - 2, null, Move.CASTLE));
+        }
+    }
+
+    private static void addMoves(int from, long targets, long occupied, MoveList moves) {
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            moves.add(Move.encode(from, to, null, captureFlag(to, occupied)));
+        }
+    }
+
+    private static void addPawnMoves(int from, long targets, long occupied, MoveList moves) {
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            int flags = captureFlag(to, occupied);
+            if (Math.abs(to - from) == 16) {
+                flags |= Move.DOUBLE_PUSH;
+            }
+            if (to >= 56 || to < 8) {
+                for (ChessPiece.PieceType promotion : PROMOTIONS) {
+                    moves.add(Move.encode(from, to, promotion, flags));
+                }
+            } else {
+                moves.add(Move.encode(from, to, null, flags));
+            }
+        }
+    }
+
+    private static int captureFlag(int to, long occupied) {
+        // Own pieces are never targets, so anything on the square is an enemy
+        return (occupied & (1L << to)) != 0 ? Move.CAPTURE : 0;
+    }
+
+    private static ChessGame.TeamColor opposite(ChessGame.TeamColor color) {
+        return color == ChessGame.TeamColor.WHITE ? ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE;
+    }
+}
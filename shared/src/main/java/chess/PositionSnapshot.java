@@ -0,0 +1,96 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * An immutable copy of a game's position: one byte per square plus the team to
+ * move, the packed castling, en passant and halfmove clock state, and whether
+ * the game is over. Nothing in it can change once it is made, so it can be
+ * handed to other threads without locking, and copying it out again is a
+ * single array copy.
+ * <p>
+ * A square's byte is 0 when it is empty, otherwise one more than the piece's
+ * {@link Bitboards#pieceIndex} value.
+ */
+public final class PositionSnapshot {
+    private final byte[] squares;
+    private final ChessGame.TeamColor teamTurn;
+    private final int positionState;
+    private final boolean gameOver;
+
+    PositionSnapshot(byte[] squares, ChessGame.TeamColor teamTurn, int positionState, boolean gameOver) {
+        this.squares = squares;
+        this.teamTurn = teamTurn;
+        this.positionState = positionState;
+        this.gameOver = gameOver;
+    }
+
+    /**
+     * Gets the piece on a square
+     *
+     * @param square the square index, see {@link Bitboards#square(int, int)}
+     * @return the piece on the square, or null if it is empty
+     */
+    public ChessPiece getPiece(int square) {
+        int code = squares[square];
+        if (code == 0) {
+            return null;
+        }
+        return ChessPiece.of(ChessGame.TeamColor.values()[(code - 1) / 6],
+                ChessPiece.PieceType.values()[(code - 1) % 6]);
+    }
+
+    public ChessPiece getPiece(ChessPosition position) {
+        return getPiece(Bitboards.square(position));
+    }
+
+    /**
+     * @return a copy of the 64 square bytes
+     */
+    public byte[] getSquares() {
+        return squares.clone();
+    }
+
+    public ChessGame.TeamColor getTeamTurn() {
+        return teamTurn;
+    }
+
+    int getPositionState() {
+        return positionState;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * @return a new board holding the pieces of this position
+     */
+    public ChessBoard toBoard() {
+        ChessBoard board = new ChessBoard();
+        for (int square = 0; square < 64; square++) {
+            if (squares[square] != 0) {
+                board.addPiece(square, getPiece(square));
+            }
+        }
+        return board;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PositionSnapshot that = (PositionSnapshot) o;
+        return positionState == that.positionState && gameOver == that.gameOver
+                && teamTurn == that.teamTurn && Arrays.equals(squares, that.squares);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(squares) + 7 * teamTurn.hashCode() + positionState;
+    }
+}
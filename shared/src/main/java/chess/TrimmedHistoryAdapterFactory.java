@@ -0,0 +1,41 @@
+package chess;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link ChessGame} as Gson otherwise would, after trimming the room
+ * to spare off the end of its move history, so only the moves played are
+ * stored and sent. Reading is left to Gson.
+ */
+final class TrimmedHistoryAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (type.getRawType() != ChessGame.class) {
+            return null;
+        }
+        TypeAdapter<ChessGame> delegate = gson.getDelegateAdapter(this, TypeToken.get(ChessGame.class));
+        return (TypeAdapter<T>) new TypeAdapter<ChessGame>() {
+            @Override
+            public void write(JsonWriter out, ChessGame game) throws IOException {
+                if (game != null) {
+                    game.trimHistory();
+                }
+                delegate.write(out, game);
+            }
+
+            @Override
+            public ChessGame read(JsonReader in) throws IOException {
+                return delegate.read(in);
+            }
+        };
+    }
+}
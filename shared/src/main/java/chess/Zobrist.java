@@ -0,0 +1,78 @@
+package chess;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random keys for Zobrist hashing of chess positions.
+ * <p>
+ * A position's key is the XOR of one key per piece on its square, plus keys for
+ * black to move, the castling rights and the en passant file. Moving a piece
+ * only needs two XORs to update the key, so it can be kept up to date as moves
+ * are made rather than recomputed from the board.
+ * <p>
+ * The keys come from a fixed seed so they are the same in every process. Keys
+ * are stored with games, so changing the seed invalidates stored histories.
+ */
+public final class Zobrist {
+    private static final long[][] PIECE_SQUARE = new long[12][64];
+    private static final long[] CASTLING = new long[16];
+    private static final long[] EN_PASSANT_FILE = new long[8];
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_C0FF_EE15_BAADL);
+        for (long[] squares : PIECE_SQUARE) {
+            for (int square = 0; square < 64; square++) {
+                squares[square] = random.nextLong();
+            }
+        }
+        long[] castlingBits = new long[4];
+        for (int i = 0; i < castlingBits.length; i++) {
+            castlingBits[i] = random.nextLong();
+        }
+        // Combine the four rights so a whole rights mask is one lookup
+        for (int rights = 0; rights < 16; rights++) {
+            for (int i = 0; i < castlingBits.length; i++) {
+                if ((rights & (1 << i)) != 0) {
+                    CASTLING[rights] ^= castlingBits[i];
+                }
+            }
+        }
+        for (int file = 0; file < 8; file++) {
+            EN_PASSANT_FILE[file] = random.nextLong();
+        }
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() { }
+
+    /**
+     * @return the key for a piece standing on a square
+     */
+    public static long piece(ChessPiece piece, int square) {
+        return PIECE_SQUARE[Bitboards.pieceIndex(piece.getTeamColor(), piece.getPieceType())][square];
+    }
+
+    /**
+     * @param rights castling rights, bits: white right, white left, black right, black left
+     * @return the key for a set of castling rights
+     */
+    public static long castling(int rights) {
+        return CASTLING[rights];
+    }
+
+    /**
+     * @param square the en passant target square
+     * @return the key for en passant being available on that square's file
+     */
+    public static long enPassant(int square) {
+        return EN_PASSANT_FILE[square & 7];
+    }
+
+    /**
+     * @return the key XORed in when it is black's turn
+     */
+    public static long blackToMove() {
+        return BLACK_TO_MOVE;
+    }
+}
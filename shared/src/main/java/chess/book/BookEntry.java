@@ -0,0 +1,13 @@
+package chess.book;
+
+import chess.ChessMove;
+
+/**
+ * One move an opening book knows for a position
+ *
+ * @param move the move
+ * @param weight how often the move should be picked, relative to the other
+ * moves for the same position; 0 means never
+ */
+public record BookEntry(ChessMove move, int weight) {
+}
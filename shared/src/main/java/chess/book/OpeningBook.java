@@ -0,0 +1,293 @@
+package chess.book;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.ChessPosition;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.random.RandomGenerator;
+
+/**
+ * An opening book in the Polyglot .bin layout, read straight from a memory
+ * mapped file.
+ * <p>
+ * The file is a run of 16-byte big-endian entries sorted by position key: the
+ * key (8 bytes), the move (2 bytes), its weight (2 bytes) and 4 bytes of
+ * learning data that are ignored here. A move packs the target file and rank
+ * in bits 0-5, the start file and rank in bits 6-11 and the promotion piece in
+ * bits 12-14 (1 knight up to 4 queen). Castling is written as the king taking
+ * its own rook, so e1h1 rather than e1g1.
+ * <p>
+ * Positions are keyed by {@link ChessGame#getPolyglotKey()}, so books made by
+ * other Polyglot tools can be read, and books made with {@link #write} can be
+ * used by them.
+ * <p>
+ * Nothing is copied onto the heap. A lookup is a binary search on the mapped
+ * pages, so opening a book costs the same whatever its size, and the operating
+ * system keeps the parts in use cached. A book is read only, so any number of
+ * threads may use one at once.
+ */
+public final class OpeningBook {
+    private static final int ENTRY_BYTES = 16;
+    // Each mapping holds 2^26 entries (1 GB), since one buffer can't pass 2 GB
+    private static final int SEGMENT_SHIFT = 26;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private static final ChessPiece.PieceType[] PROMOTIONS = {null, ChessPiece.PieceType.KNIGHT,
+            ChessPiece.PieceType.BISHOP, ChessPiece.PieceType.ROOK, ChessPiece.PieceType.QUEEN};
+
+    private final ByteBuffer[] segments;
+    private final long size;
+
+    private OpeningBook(ByteBuffer[] segments, long size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    /**
+     * Maps a book file into memory. The file is closed again right away; the
+     * mapping stays valid until the book is garbage collected.
+     *
+     * @param path the book file
+     * @return the book
+     * @throws IOException if the file can't be read or isn't a whole number of entries
+     */
+    public static OpeningBook open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long bytes = channel.size();
+            if (bytes % ENTRY_BYTES != 0) {
+                throw new IOException(path + " is not an opening book: its size isn't a multiple of "
+                        + ENTRY_BYTES + " bytes");
+            }
+            long size = bytes / ENTRY_BYTES;
+            int segmentCount = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            ByteBuffer[] segments = new ByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long first = (long) i << SEGMENT_SHIFT;
+                long entries = Math.min(SEGMENT_MASK + 1, size - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, first * ENTRY_BYTES,
+                        entries * ENTRY_BYTES);
+            }
+            return new OpeningBook(segments, size);
+        }
+    }
+
+    /**
+     * @return the number of entries in the book
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Finds every move the book knows for the current position of a game. Moves
+     * that aren't legal, which only happens if another position shares the key,
+     * are left out.
+     *
+     * @param game the game to look up
+     * @return the moves with their weights, in the order stored; empty if the
+     * position isn't in the book
+     */
+    public List<BookEntry> lookup(ChessGame game) {
+        long key = game.getPolyglotKey();
+        List<BookEntry> found = new ArrayList<>();
+        for (long i = firstIndex(key); i < size && key(i) == key; i++) {
+            ChessMove move = decodeMove(game, move(i));
+            if (move != null) {
+                found.add(new BookEntry(move, weight(i)));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Picks one of the book's moves for the current position of a game, each
+     * with a chance in proportion to its weight
+     *
+     * @param game the game to pick a move in
+     * @param random where the choice comes from
+     * @return the move, or null if the book has no move for the position
+     */
+    public ChessMove pickMove(ChessGame game, RandomGenerator random) {
+        List<BookEntry> entries = lookup(game);
+        int totalWeight = 0;
+        for (BookEntry entry : entries) {
+            totalWeight += entry.weight();
+        }
+        if (totalWeight == 0) {
+            return null;
+        }
+        int pick = random.nextInt(totalWeight);
+        for (BookEntry entry : entries) {
+            pick -= entry.weight();
+            if (pick < 0) {
+                return entry.move();
+            }
+        }
+        throw new AssertionError("The weights add up to " + totalWeight);
+    }
+
+    /**
+     * Determines if the book would play a move in the current position of a game
+     *
+     * @param game the game before the move
+     * @param move the move to check
+     * @return True if the book has the move with a weight above 0
+     */
+    public boolean isBookMove(ChessGame game, ChessMove move) {
+        for (BookEntry entry : lookup(game)) {
+            if (entry.weight() > 0 && entry.move().equals(move)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds a book from the openings of played games. Each move's weight is how
+     * many of the games played it in that position, up to the largest weight a
+     * book can store.
+     *
+     * @param path where to write the book, replacing any file there
+     * @param games the games to learn from; each is read through its move
+     * history and left as it was
+     * @param maxPly how many moves from the start of each game to use
+     * @throws IOException if the file can't be written
+     */
+    public static void write(Path path, Collection<ChessGame> games, int maxPly) throws IOException {
+        // Polyglot sorts by key as an unsigned number, then by move
+        Map<Long, Map<Integer, Integer>> weights = new TreeMap<>(Long::compareUnsigned);
+        for (ChessGame original : games) {
+            ChessGame game = original.copy();
+            game.seek(0);
+            List<ChessMove> moves = game.getMoveHistory();
+            for (int ply = 0; ply < Math.min(maxPly, moves.size()); ply++) {
+                ChessMove move = moves.get(ply);
+                weights.computeIfAbsent(game.getPolyglotKey(), key -> new TreeMap<>())
+                        .merge(encodeMove(game, move), 1, (a, b) -> Math.min(a + b, 0xFFFF));
+                game.redo();
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(ENTRY_BYTES * 1024);
+            for (Map.Entry<Long, Map<Integer, Integer>> position : weights.entrySet()) {
+                for (Map.Entry<Integer, Integer> move : position.getValue().entrySet()) {
+                    if (!buffer.hasRemaining()) {
+                        flush(channel, buffer);
+                    }
+                    buffer.putLong(position.getKey());
+                    buffer.putShort((short) (int) move.getKey());
+                    buffer.putShort((short) (int) move.getValue());
+                    buffer.putInt(0);
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return the index of the first entry whose key isn't below the given key
+     */
+    private long firstIndex(long key) {
+        long low = 0;
+        long high = size;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(key(middle), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long key(long index) {
+        return segment(index).getLong(offset(index));
+    }
+
+    private int move(long index) {
+        return segment(index).getShort(offset(index) + 8) & 0xFFFF;
+    }
+
+    private int weight(long index) {
+        return segment(index).getShort(offset(index) + 10) & 0xFFFF;
+    }
+
+    private ByteBuffer segment(long index) {
+        return segments[(int) (index >>> SEGMENT_SHIFT)];
+    }
+
+    private static int offset(long index) {
+        return (int) (index & SEGMENT_MASK) * ENTRY_BYTES;
+    }
+
+    /**
+     * Turns a stored move into a move of the game, if it is a legal one for the
+     * team to move
+     */
+    private static ChessMove decodeMove(ChessGame game, int bookMove) {
+        int promotion = bookMove >>> 12 & 7;
+        if (promotion >= PROMOTIONS.length) {
+            return null;
+        }
+        ChessPosition start = ChessPosition.of((bookMove >>> 9 & 7) + 1, (bookMove >>> 6 & 7) + 1);
+        int endRow = (bookMove >>> 3 & 7) + 1;
+        int endColumn = (bookMove & 7) + 1;
+        ChessPiece piece = game.getBoard().getPiece(start);
+        if (piece == null || piece.getTeamColor() != game.getTeamTurn()) {
+            return null;
+        }
+        if (isCastlingOntoRook(piece, start, endRow, endColumn)) {
+            endColumn = endColumn == 8 ? 7 : 3;
+        }
+        ChessMove move = new ChessMove(start, ChessPosition.of(endRow, endColumn), PROMOTIONS[promotion]);
+        return game.isLegal(move) ? move : null;
+    }
+
+    private static int encodeMove(ChessGame game, ChessMove move) {
+        ChessPosition start = move.getStartPosition();
+        ChessPosition end = move.getEndPosition();
+        int endColumn = end.getColumn();
+        ChessPiece piece = game.getBoard().getPiece(start);
+        if (piece.getPieceType() == ChessPiece.PieceType.KING && Math.abs(endColumn - start.getColumn()) == 2) {
+            endColumn = endColumn == 7 ? 8 : 1;
+        }
+        int promotion = 0;
+        for (int i = 1; i < PROMOTIONS.length; i++) {
+            if (PROMOTIONS[i] == move.getPromotionPiece()) {
+                promotion = i;
+            }
+        }
+        return promotion << 12 | (start.getRow() - 1) << 9 | (start.getColumn() - 1) << 6
+                | (end.getRow() - 1) << 3 | (endColumn - 1);
+    }
+
+    /**
+     * A king on the e-file moving to a corner of its own rank can only be
+     * castling, written the Polyglot way
+     */
+    private static boolean isCastlingOntoRook(ChessPiece piece, ChessPosition start, int endRow, int endColumn) {
+        return piece.getPieceType() == ChessPiece.PieceType.KING && start.getColumn() == 5
+                && endRow == start.getRow() && (endColumn == 1 || endColumn == 8);
+    }
+}
@@ -0,0 +1,284 @@
+package chess.search;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.Move;
+import chess.tablebase.Tablebase;
+import chess.tablebase.TablebaseResult;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks a move for the team to move by searching the game tree with one or
+ * more threads. With more than one, the extra threads search the same root
+ * position on their own copies of the game and share nothing but the
+ * transposition table. What one thread learns about a position is found there
+ * by the others, so together they reach deeper than one thread would in the
+ * same time. The calling thread runs the main search and decides when to stop.
+ * The deepest finished result is returned, with ties going to the main thread.
+ * <p>
+ * The helper threads belong to the engine and wait between searches, so a
+ * search doesn't pay for starting threads. They are daemon threads, and they
+ * end once the engine has gone unused for a while, so an engine that is
+ * dropped doesn't keep them.
+ * <p>
+ * The main search plays its moves on the game it is given with doMove and
+ * takes them all back before returning, so the game must not be used elsewhere
+ * until it does. An engine keeps its transposition table from one search to
+ * the next and runs one search at a time.
+ * <p>
+ * With a {@link Tablebase}, positions it covers are looked up instead of
+ * searched, both at the root and wherever a capture leaves few enough pieces
+ * in the tree.
+ */
+public final class Engine {
+    public static final int MATE_SCORE = 30000;
+    public static final int MAX_DEPTH = 64;
+
+    private static final int DEFAULT_TABLE_MEGABYTES = 16;
+    private static final long HELPER_IDLE_SECONDS = 60;
+    private static final AtomicInteger HELPER_THREADS_STARTED = new AtomicInteger();
+
+    private final TranspositionTable table;
+    private final Searcher[] searchers;
+    // Null when the caller's thread searches alone
+    private final ThreadPoolExecutor helpers;
+    private final AtomicLong searchedNodes = new AtomicLong();
+    private volatile boolean stopRequested;
+    private Tablebase tablebase;
+    private long nodeLimit;
+    private long deadline;
+
+    public Engine() {
+        this(DEFAULT_TABLE_MEGABYTES, 1);
+    }
+
+    /**
+     * @param tableMegabytes roughly how much memory the transposition table may use
+     */
+    public Engine(int tableMegabytes) {
+        this(tableMegabytes, 1);
+    }
+
+    /**
+     * @param tableMegabytes roughly how much memory the transposition table may use
+     * @param threads how many threads search at once, including the caller's
+     */
+    public Engine(int tableMegabytes, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("An engine needs at least one thread, not " + threads);
+        }
+        table = new TranspositionTable(tableMegabytes);
+        searchers = new Searcher[threads];
+        for (int i = 0; i < threads; i++) {
+            searchers[i] = new Searcher(this, table);
+        }
+        helpers = threads > 1 ? newHelperPool(threads - 1) : null;
+    }
+
+    private static ThreadPoolExecutor newHelperPool(int size) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, HELPER_IDLE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), task -> {
+                    Thread thread = new Thread(task, "search-helper-" + HELPER_THREADS_STARTED.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * @return how many threads search at once, including the caller's
+     */
+    public int getThreads() {
+        return searchers.length;
+    }
+
+    /**
+     * Sets the endgame tablebase to look positions up in. No search may be
+     * running.
+     *
+     * @param tablebase the tablebase, or null to search every position
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Searches the current position of a game for the best move of the team to
+     * move
+     *
+     * @param game the game to search, which is left as it was
+     * @param limits when to stop searching
+     * @return the best move found with its score
+     */
+    public SearchResult search(ChessGame game, SearchLimits limits) {
+        table.newSearch();
+        return run(game, limits);
+    }
+
+    /**
+     * Searches the same position as the last search again, for a caller that
+     * splits one search into several shorter ones. The transposition table
+     * isn't aged, so what the earlier searches stored is treated as current
+     * and the early iterations are answered almost entirely from it.
+     *
+     * @param game the game to search, in the position the last search was given
+     * @param limits when to stop this part of the search
+     * @return the best move found with its score
+     */
+    public SearchResult continueSearch(ChessGame game, SearchLimits limits) {
+        return run(game, limits);
+    }
+
+    /**
+     * Determines if a score is a mate found by a search or the tablebase
+     *
+     * @param score a score from a {@link SearchResult}
+     * @return True if the score means one side can force mate
+     */
+    public static boolean isMateScore(int score) {
+        return Math.abs(score) >= MATE_SCORE - Searcher.MAX_PLY;
+    }
+
+    private SearchResult run(ChessGame game, SearchLimits limits) {
+        long start = System.nanoTime();
+        stopRequested = false;
+        searchedNodes.set(0);
+        nodeLimit = limits.nodes();
+        deadline = limits.timeMillis() > 0 ? start + limits.timeMillis() * 1_000_000 : 0;
+        int maxDepth = limits.depth() > 0 ? Math.min(limits.depth(), MAX_DEPTH) : MAX_DEPTH;
+
+        if (!game.hasAnyLegalMove(game.getTeamTurn())) {
+            int score = game.isInCheck(game.getTeamTurn()) ? -MATE_SCORE : 0;
+            return new SearchResult(null, score, 0, 0, elapsedMillis(start), new long[searchers.length]);
+        }
+        TablebaseResult known = tablebase == null ? null : tablebase.probe(game);
+        if (known != null) {
+            ChessMove bestMove = tablebase.bestMove(game);
+            return new SearchResult(bestMove, tablebaseScore(known, 0), 0, 0, elapsedMillis(start),
+                    new long[searchers.length]);
+        }
+
+        Future<?>[] helperSearches = new Future<?>[searchers.length - 1];
+        for (int i = 1; i < searchers.length; i++) {
+            Searcher helper = searchers[i];
+            ChessGame helperGame = game.copy();
+            // Odd helpers start a ply deeper so the threads aren't all on the same iteration
+            int firstDepth = Math.min(1 + i % 2, maxDepth);
+            helperSearches[i - 1] = helpers.submit(() -> helper.search(helperGame, firstDepth, maxDepth, start,
+                    false));
+        }
+        try {
+            searchers[0].search(game, 1, maxDepth, start, true);
+        } finally {
+            stopRequested = true;
+            awaitAll(helperSearches);
+        }
+
+        Searcher best = searchers[0];
+        long[] threadNodes = new long[searchers.length];
+        for (int i = 0; i < searchers.length; i++) {
+            threadNodes[i] = searchers[i].getNodes();
+            if (searchers[i].getCompletedDepth() > best.getCompletedDepth()) {
+                best = searchers[i];
+            }
+        }
+        return new SearchResult(Move.toChessMove(best.getBestMove()), best.getBestScore(),
+                best.getCompletedDepth(), searchedNodes.get(), elapsedMillis(start), threadNodes);
+    }
+
+    /**
+     * Asks a running search to stop as soon as it can. The search still returns
+     * the best move it has found so far. This may be called from any thread.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Forgets everything the transposition table has learned, for when the
+     * engine moves on to an unrelated game. No search may be running.
+     */
+    public void clear() {
+        table.clear();
+    }
+
+    Tablebase getTablebase() {
+        return tablebase;
+    }
+
+    /**
+     * Turns a tablebase result into a search score, counting mates from the root
+     *
+     * @param ply how many moves the position is from the root
+     */
+    static int tablebaseScore(TablebaseResult result, int ply) {
+        return switch (result.outcome()) {
+            case WIN -> MATE_SCORE - ply - result.pliesToMate();
+            case DRAW -> 0;
+            case LOSS -> -MATE_SCORE + ply + result.pliesToMate();
+        };
+    }
+
+    long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Adds positions a thread has visited to the count for the whole search
+     *
+     * @return the number of positions visited by all threads so far
+     */
+    long addNodes(long nodes) {
+        return searchedNodes.addAndGet(nodes);
+    }
+
+    /**
+     * @return True if the search has been stopped or has run out of nodes or time
+     */
+    boolean shouldStop(long totalNodes) {
+        return stopRequested || (nodeLimit > 0 && totalNodes >= nodeLimit)
+                || (deadline != 0 && System.nanoTime() >= deadline);
+    }
+
+    /**
+     * Waits for every helper search to finish, even if interrupted, since they
+     * still use this engine's searchers
+     *
+     * @throws IllegalStateException if a helper search failed
+     */
+    private static void awaitAll(Future<?>[] helperSearches) {
+        boolean interrupted = false;
+        Throwable failure = null;
+        for (Future<?> helperSearch : helperSearches) {
+            while (true) {
+                try {
+                    helperSearch.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IllegalStateException("A helper search failed", failure);
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,146 @@
+package chess.search;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessPiece;
+
+/**
+ * Scores a position by material and piece placement. Each piece is worth its
+ * material value plus a bonus from a table of squares, written from white's
+ * side with a8 first. The king's table blends from a sheltered middlegame
+ * spot to the center as the pieces come off.
+ */
+public final class Evaluator {
+    // Indexed by PieceType ordinal: king, queen, bishop, knight, rook, pawn
+    static final int[] PIECE_VALUES = {0, 900, 330, 320, 500, 100};
+
+    // How much each piece type counts toward the middlegame, 24 for a full set
+    private static final int[] PHASE_WEIGHTS = {0, 4, 1, 1, 2, 0};
+    private static final int FULL_PHASE = 24;
+
+    private static final int[] KING_MIDDLEGAME = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+            20, 20, 0, 0, 0, 0, 20, 20,
+            20, 30, 10, 0, 0, 10, 30, 20
+    };
+    private static final int[] KING_ENDGAME = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10, 0, 0, -10, -20, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -30, 0, 0, 0, 0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50
+    };
+    private static final int[] QUEEN = {
+            -20, -10, -10, -5, -5, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 5, 5, 5, 0, -10,
+            -5, 0, 5, 5, 5, 5, 0, -5,
+            0, 0, 5, 5, 5, 5, 0, -5,
+            -10, 5, 5, 5, 5, 5, 0, -10,
+            -10, 0, 5, 0, 0, 0, 0, -10,
+            -20, -10, -10, -5, -5, -10, -10, -20
+    };
+    private static final int[] BISHOP = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 10, 10, 5, 0, -10,
+            -10, 5, 5, 10, 10, 5, 5, -10,
+            -10, 0, 10, 10, 10, 10, 0, -10,
+            -10, 10, 10, 10, 10, 10, 10, -10,
+            -10, 5, 0, 0, 0, 0, 5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20
+    };
+    private static final int[] KNIGHT = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20, 0, 0, 0, 0, -20, -40,
+            -30, 0, 10, 15, 15, 10, 0, -30,
+            -30, 5, 15, 20, 20, 15, 5, -30,
+            -30, 0, 15, 20, 20, 15, 0, -30,
+            -30, 5, 10, 15, 15, 10, 5, -30,
+            -40, -20, 0, 5, 5, 0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50
+    };
+    private static final int[] ROOK = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            5, 10, 10, 10, 10, 10, 10, 5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            0, 0, 0, 5, 5, 0, 0, 0
+    };
+    private static final int[] PAWN = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            10, 10, 20, 30, 30, 20, 10, 10,
+            5, 5, 10, 25, 25, 10, 5, 5,
+            0, 0, 0, 20, 20, 0, 0, 0,
+            5, -5, -10, 0, 0, -10, -5, 5,
+            5, 10, 10, -20, -20, 10, 10, 5,
+            0, 0, 0, 0, 0, 0, 0, 0
+    };
+    // Indexed by PieceType ordinal; the king is scored separately
+    private static final int[][] SQUARE_TABLES = {null, QUEEN, BISHOP, KNIGHT, ROOK, PAWN};
+
+    private static final ChessPiece.PieceType[] PIECE_TYPES = ChessPiece.PieceType.values();
+
+    private Evaluator() { }
+
+    /**
+     * Scores the current position from the side of the team to move
+     *
+     * @param game the game to score
+     * @return the score in centipawns, positive when the team to move is better
+     */
+    public static int evaluate(ChessGame game) {
+        ChessBoard board = game.getBoard();
+        int score = 0;
+        int phase = 0;
+        for (ChessPiece.PieceType type : PIECE_TYPES) {
+            if (type == ChessPiece.PieceType.KING) {
+                continue;
+            }
+            int[] table = SQUARE_TABLES[type.ordinal()];
+            int value = PIECE_VALUES[type.ordinal()];
+            // The tables start at a8, so white flips the row and black reads them as is
+            long white = board.getBitboard(ChessGame.TeamColor.WHITE, type);
+            while (white != 0) {
+                int square = Long.numberOfTrailingZeros(white);
+                white &= white - 1;
+                score += value + table[square ^ 56];
+                phase += PHASE_WEIGHTS[type.ordinal()];
+            }
+            long black = board.getBitboard(ChessGame.TeamColor.BLACK, type);
+            while (black != 0) {
+                int square = Long.numberOfTrailingZeros(black);
+                black &= black - 1;
+                score -= value + table[square];
+                phase += PHASE_WEIGHTS[type.ordinal()];
+            }
+        }
+
+        phase = Math.min(phase, FULL_PHASE);
+        int whiteKing = board.getKingSquare(ChessGame.TeamColor.WHITE);
+        if (whiteKing >= 0) {
+            score += kingScore(whiteKing ^ 56, phase);
+        }
+        int blackKing = board.getKingSquare(ChessGame.TeamColor.BLACK);
+        if (blackKing >= 0) {
+            score -= kingScore(blackKing, phase);
+        }
+        return game.getTeamTurn() == ChessGame.TeamColor.WHITE ? score : -score;
+    }
+
+    private static int kingScore(int tableSquare, int phase) {
+        return (KING_MIDDLEGAME[tableSquare] * phase + KING_ENDGAME[tableSquare] * (FULL_PHASE - phase)) / FULL_PHASE;
+    }
+}
@@ -0,0 +1,24 @@
+package chess.search;
+
+/**
+ * When a search should stop. Iterative deepening ends at whichever limit is
+ * reached first; a limit of 0 means there is none. With no limits at all the
+ * search stops at {@link Engine#MAX_DEPTH}.
+ *
+ * @param timeMillis how long the search may run
+ * @param nodes how many positions the search may visit
+ * @param depth the deepest iteration to search
+ */
+public record SearchLimits(long timeMillis, long nodes, int depth) {
+    public static SearchLimits time(long timeMillis) {
+        return new SearchLimits(timeMillis, 0, 0);
+    }
+
+    public static SearchLimits nodes(long nodes) {
+        return new SearchLimits(0, nodes, 0);
+    }
+
+    public static SearchLimits depth(int depth) {
+        return new SearchLimits(0, 0, depth);
+    }
+}
@@ -0,0 +1,37 @@
+package chess.search;
+
+import chess.ChessMove;
+
+/**
+ * What a search found. Scores are in centipawns from the side of the team to
+ * move; a score within {@link Engine#MAX_DEPTH} of {@link Engine#MATE_SCORE}
+ * means a forced mate, for the team to move if positive.
+ *
+ * @param bestMove the move to play, or null if the team to move has none
+ * @param score the score of the best move
+ * @param depth the deepest iteration that finished
+ * @param nodes the number of positions visited by all threads
+ * @param timeMillis how long the search ran
+ * @param threadNodes the number of positions each thread visited, the main
+ * thread first
+ */
+public record SearchResult(ChessMove bestMove, int score, int depth, long nodes, long timeMillis,
+                           long[] threadNodes) {
+    /**
+     * @return the positions visited per second by all threads
+     */
+    public long nodesPerSecond() {
+        return nodes * 1000 / Math.max(1, timeMillis);
+    }
+
+    /**
+     * @return the positions visited per second by each thread, the main thread first
+     */
+    public long[] threadNodesPerSecond() {
+        long[] rates = new long[threadNodes.length];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = threadNodes[i] * 1000 / Math.max(1, timeMillis);
+        }
+        return rates;
+    }
+}
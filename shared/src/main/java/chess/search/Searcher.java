@@ -0,0 +1,371 @@
+package chess.search;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessPiece;
+import chess.Move;
+import chess.MoveList;
+import chess.tablebase.Tablebase;
+import chess.tablebase.TablebaseResult;
+
+import java.util.Arrays;
+
+/**
+ * One thread's share of a search: negamax with alpha-beta pruning and a null
+ * window for every move after the first, deepened one ply at a time, with a
+ * quiescence search over captures at the leaves. Moves are tried best-guess
+ * first: the transposition table's move, then captures by most valuable victim
+ * and least valuable attacker, then promotions, then the two most recent moves
+ * that caused a cutoff at the same ply, then the rest.
+ * <p>
+ * Everything here belongs to one thread except the transposition table and
+ * the limits, which are shared through the {@link Engine}.
+ */
+final class Searcher {
+    static final int MAX_PLY = 128;
+
+    private static final int INFINITY = 32000;
+    // The limits are checked once every this many positions, plus one
+    private static final int CHECK_INTERVAL = 1023;
+
+    private static final int TABLE_MOVE_ORDER = 1_000_000;
+    private static final int CAPTURE_ORDER = 100_000;
+    private static final int PROMOTION_ORDER = 90_000;
+    private static final int KILLER_ORDER = 80_000;
+
+    private final Engine engine;
+    private final TranspositionTable table;
+    private final MoveList[] moveLists = new MoveList[MAX_PLY];
+    private final int[][] moveOrder = new int[MAX_PLY][256];
+    private final int[][] killers = new int[MAX_PLY][2];
+
+    private ChessGame game;
+    private long nodes;
+    private long reportedNodes;
+    private boolean stopped;
+    private int rootBestMove;
+    private int rootBestScore;
+
+    private int bestMove;
+    private int bestScore;
+    private int completedDepth;
+
+    Searcher(Engine engine, TranspositionTable table) {
+        this.engine = engine;
+        this.table = table;
+        for (int ply = 0; ply < MAX_PLY; ply++) {
+            moveLists[ply] = new MoveList();
+        }
+    }
+
+    /**
+     * Deepens the search of a game's current position one ply at a time until a
+     * limit is reached or another thread ends the search. The game must have a
+     * legal move.
+     *
+     * @param game this thread's own copy of the position
+     * @param firstDepth the depth of the first iteration
+     * @param maxDepth the depth of the last iteration
+     * @param start when the search started, from System.nanoTime
+     * @param main whether this thread decides when the search ends
+     */
+    void search(ChessGame game, int firstDepth, int maxDepth, long start, boolean main) {
+        this.game = game;
+        nodes = 0;
+        reportedNodes = 0;
+        stopped = false;
+        completedDepth = 0;
+        bestScore = 0;
+        for (int[] plyKillers : killers) {
+            Arrays.fill(plyKillers, 0);
+        }
+
+        MoveList rootMoves = moveLists[0];
+        rootMoves.clear();
+        game.legalMoves(game.getTeamTurn(), rootMoves);
+        bestMove = rootMoves.get(0);
+
+        for (int depth = firstDepth; depth <= maxDepth; depth++) {
+            rootBestMove = 0;
+            int score = negamax(depth, 0, -INFINITY, INFINITY);
+            if (stopped) {
+                // The first move searched was the last iteration's best, so any
+                // move that beat it before the stop is still worth playing
+                if (rootBestMove != 0) {
+                    bestMove = rootBestMove;
+                    bestScore = rootBestScore;
+                }
+                break;
+            }
+            bestMove = rootBestMove;
+            bestScore = score;
+            completedDepth = depth;
+            if (Engine.isMateScore(score)) {
+                break;
+            }
+            // Another iteration takes longer than all the ones before it together
+            long deadline = engine.getDeadline();
+            if (main && deadline != 0 && System.nanoTime() - start > (deadline - start) / 2) {
+                break;
+            }
+        }
+        engine.addNodes(nodes - reportedNodes);
+        reportedNodes = nodes;
+    }
+
+    int getBestMove() {
+        return bestMove;
+    }
+
+    int getBestScore() {
+        return bestScore;
+    }
+
+    int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    long getNodes() {
+        return nodes;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        if ((++nodes & CHECK_INTERVAL) == 0) {
+            checkLimits();
+        }
+        if (stopped) {
+            return 0;
+        }
+        boolean root = ply == 0;
+        if (!root && isDraw()) {
+            return 0;
+        }
+        Tablebase tablebase = engine.getTablebase();
+        if (!root && tablebase != null && Long.bitCount(game.getBoard().getOccupancy()) <= 3) {
+            TablebaseResult known = tablebase.probe(game);
+            if (known != null) {
+                return Engine.tablebaseScore(known, ply);
+            }
+        }
+        if (ply >= MAX_PLY - 1) {
+            return Evaluator.evaluate(game);
+        }
+
+        ChessGame.TeamColor color = game.getTeamTurn();
+        boolean inCheck = game.isInCheck(color);
+        if (inCheck) {
+            // Look one move further when in check, so checks at the horizon aren't missed
+            depth++;
+        }
+        if (depth <= 0) {
+            return quiesce(ply, alpha, beta);
+        }
+
+        long key = game.getZobristKey();
+        long entry = table.probe(key);
+        int tableMove = 0;
+        if (entry != 0) {
+            tableMove = TranspositionTable.move(entry);
+            if (!root && TranspositionTable.depth(entry) >= depth) {
+                int tableScore = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && tableScore >= beta)
+                        || (bound == TranspositionTable.UPPER && tableScore <= alpha)) {
+                    return tableScore;
+                }
+            }
+        }
+
+        MoveList moves = moveLists[ply];
+        moves.clear();
+        game.legalMoves(color, moves);
+        if (moves.isEmpty()) {
+            return inCheck ? -Engine.MATE_SCORE + ply : 0;
+        }
+        orderMoves(moves, ply, tableMove);
+
+        int originalAlpha = alpha;
+        int bestMoveHere = 0;
+        int bestScoreHere = -INFINITY;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = nextMove(moves, ply, i);
+            game.doMove(move);
+            int score;
+            if (i == 0) {
+                score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            } else {
+                // Try to prove the move is no better than the best so far, and only
+                // search it properly if that fails
+                score = -negamax(depth - 1, ply + 1, -alpha - 1, -alpha);
+                if (score > alpha && score < beta) {
+                    score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+                }
+            }
+            game.undoMove();
+            if (stopped) {
+                return 0;
+            }
+
+            if (score > bestScoreHere) {
+                bestScoreHere = score;
+                bestMoveHere = move;
+                if (root) {
+                    rootBestMove = move;
+                    rootBestScore = score;
+                }
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        if (!Move.isCapture(move)) {
+                            addKiller(ply, move);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = bestScoreHere >= beta ? TranspositionTable.LOWER
+                : bestScoreHere > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        table.store(key, Move.withoutFlags(bestMoveHere), toTable(bestScoreHere, ply), depth, bound);
+        return bestScoreHere;
+    }
+
+    /**
+     * Searches only captures until the position is quiet. The team to move may
+     * also stand pat, since it is never forced to capture.
+     */
+    private int quiesce(int ply, int alpha, int beta) {
+        if ((++nodes & CHECK_INTERVAL) == 0) {
+            checkLimits();
+        }
+        if (stopped) {
+            return 0;
+        }
+        int standPat = Evaluator.evaluate(game);
+        if (standPat >= beta || ply >= MAX_PLY - 1) {
+            return standPat;
+        }
+        if (standPat > alpha) {
+            alpha = standPat;
+        }
+
+        MoveList moves = moveLists[ply];
+        moves.clear();
+        game.legalCaptures(game.getTeamTurn(), moves);
+        orderMoves(moves, ply, 0);
+        for (int i = 0; i < moves.size(); i++) {
+            game.doMove(nextMove(moves, ply, i));
+            int score = -quiesce(ply + 1, -beta, -alpha);
+            game.undoMove();
+            if (stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                return score;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+        }
+        return alpha;
+    }
+
+    private boolean isDraw() {
+        return game.isFiftyMoveRule() || game.isInsufficientMaterial() || game.isThreefoldRepetition();
+    }
+
+    private void checkLimits() {
+        long totalNodes = engine.addNodes(nodes - reportedNodes);
+        reportedNodes = nodes;
+        if (engine.shouldStop(totalNodes)) {
+            stopped = true;
+        }
+    }
+
+    /**
+     * Gives every move a number saying how early it should be tried
+     */
+    private void orderMoves(MoveList moves, int ply, int tableMove) {
+        if (moveOrder[ply].length < moves.size()) {
+            moveOrder[ply] = new int[moves.size()];
+        }
+        int[] order = moveOrder[ply];
+        ChessBoard board = game.getBoard();
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            int plainMove = Move.withoutFlags(move);
+            ChessPiece.PieceType promotion = Move.promotion(move);
+            if (plainMove == tableMove) {
+                order[i] = TABLE_MOVE_ORDER;
+            } else if (Move.isCapture(move)) {
+                int victim = (Move.flags(move) & Move.EN_PASSANT) != 0 ? ChessPiece.PieceType.PAWN.ordinal()
+                        : board.getPiece(Move.to(move)).getPieceType().ordinal();
+                int attacker = board.getPiece(Move.from(move)).getPieceType().ordinal();
+                order[i] = CAPTURE_ORDER + 10 * Evaluator.PIECE_VALUES[victim] - Evaluator.PIECE_VALUES[attacker]
+                        + (promotion == null ? 0 : Evaluator.PIECE_VALUES[promotion.ordinal()]);
+            } else if (promotion != null) {
+                order[i] = PROMOTION_ORDER + Evaluator.PIECE_VALUES[promotion.ordinal()];
+            } else if (plainMove == killers[ply][0]) {
+                order[i] = KILLER_ORDER + 1;
+            } else if (plainMove == killers[ply][1]) {
+                order[i] = KILLER_ORDER;
+            } else {
+                order[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Swaps the best ordered move not yet tried into place i and returns it
+     */
+    private int nextMove(MoveList moves, int ply, int i) {
+        int[] order = moveOrder[ply];
+        int best = i;
+        for (int j = i + 1; j < moves.size(); j++) {
+            if (order[j] > order[best]) {
+                best = j;
+            }
+        }
+        int move = moves.get(best);
+        moves.set(best, moves.get(i));
+        moves.set(i, move);
+        int bestOrder = order[best];
+        order[best] = order[i];
+        order[i] = bestOrder;
+        return move;
+    }
+
+    private void addKiller(int ply, int move) {
+        int plainMove = Move.withoutFlags(move);
+        if (killers[ply][0] != plainMove) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = plainMove;
+        }
+    }
+
+    /**
+     * Mate scores count moves from the root, but the table is shared between
+     * plies, so they are stored counting from the position itself
+     */
+    private static int toTable(int score, int ply) {
+        if (score >= Engine.MATE_SCORE - MAX_PLY) {
+            return score + ply;
+        }
+        if (score <= -Engine.MATE_SCORE + MAX_PLY) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= Engine.MATE_SCORE - MAX_PLY) {
+            return score - ply;
+        }
+        if (score <= -Engine.MATE_SCORE + MAX_PLY) {
+            return score + ply;
+        }
+        return score;
+    }
+}
@@ -0,0 +1,132 @@
+package chess.search;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size table of search results keyed by Zobrist key, so a position
+ * reached again by a different move order doesn't have to be searched again.
+ * <p>
+ * The table is two parallel long arrays, one slot per key, with the slot picked
+ * by the low bits of the key. An entry packs the best move (bits 0-15), the
+ * score (bits 16-31), the depth searched (bits 32-39), the kind of bound the
+ * score is (bits 40-41) and the search it was stored in (bits 42-49). When two
+ * positions want the same slot the deeper result is kept, unless the one
+ * already there is left over from an earlier search.
+ * <p>
+ * Several search threads share one table without locking. The key array holds
+ * each key XORed with its entry, so if two threads write a slot at once and
+ * the key of one ends up beside the entry of the other, the pair no longer
+ * decodes to either key and the probe misses instead of returning the wrong
+ * result.
+ */
+public final class TranspositionTable {
+    public static final int EXACT = 1;
+    public static final int LOWER = 2;
+    public static final int UPPER = 3;
+
+    private static final int ENTRY_BYTES = 16;
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int mask;
+    private volatile int age;
+
+    /**
+     * @param megabytes roughly how much memory the table may use; it is rounded
+     * down to a power of two number of entries
+     */
+    public TranspositionTable(int megabytes) {
+        long wanted = Math.max(1L, (long) megabytes * 1024 * 1024 / ENTRY_BYTES);
+        int size = (int) Math.min(Long.highestOneBit(wanted), 1 << 30);
+        keys = new long[size];
+        entries = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Looks up a position
+     *
+     * @param key the position's Zobrist key
+     * @return the packed entry, or 0 if the position isn't in the table
+     */
+    public long probe(long key) {
+        int slot = (int) key & mask;
+        long entry = entries[slot];
+        return (keys[slot] ^ entry) == key ? entry : 0L;
+    }
+
+    /**
+     * Stores a search result, unless the slot holds a deeper result from the
+     * current search for a different position
+     *
+     * @param key the position's Zobrist key
+     * @param move the best move found, packed with {@link chess.Move}, or 0 for none
+     * @param score the score, with mate scores counted from this position
+     * @param depth the depth searched
+     * @param bound EXACT, LOWER or UPPER
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        int slot = (int) key & mask;
+        int currentAge = age & 0xFF;
+        long old = entries[slot];
+        boolean samePosition = (keys[slot] ^ old) == key;
+        if (old != 0 && !samePosition && age(old) == currentAge && depth(old) > depth) {
+            return;
+        }
+        if (move == 0 && samePosition) {
+            // Keep the old best move for ordering when this result didn't find one
+            move = move(old);
+        }
+        long entry = (move & 0xFFFFL)
+                | (score & 0xFFFFL) << 16
+                | (long) Math.min(depth, 0xFF) << 32
+                | (long) bound << 40
+                | (long) currentAge << 42;
+        keys[slot] = key ^ entry;
+        entries[slot] = entry;
+    }
+
+    /**
+     * Marks the start of a new search, so entries from earlier searches give way
+     * to new ones whatever their depth. It must be called before the search
+     * threads start.
+     */
+    public void newSearch() {
+        age++;
+    }
+
+    /**
+     * Empties the table. No search may be using it at the time.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(entries, 0L);
+    }
+
+    /**
+     * @return the number of slots in the table
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    public static int move(long entry) {
+        return (int) (entry & 0xFFFF);
+    }
+
+    public static int score(long entry) {
+        return (short) (entry >>> 16);
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 32 & 0xFF);
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 40 & 3);
+    }
+
+    private static int age(long entry) {
+        return (int) (entry >>> 42 & 0xFF);
+    }
+}
@@ -0,0 +1,249 @@
+package chess.tablebase;
+
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPiece;
+import chess.Move;
+import chess.MoveList;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Perfect play for positions with three pieces or fewer, read from tables made
+ * by {@link TablebaseGenerator}: a king and a queen, rook, bishop, knight or
+ * pawn against a lone king, with either team holding the extra piece. Two bare
+ * kings are always a draw and need no table.
+ * <p>
+ * Each table is one file holding a signed byte per position, as stored by
+ * {@link TablebaseResult#fromStored}, split into blocks of 4096 positions that
+ * are compressed on their own with Deflater. A file starts with a 16-byte
+ * header (a magic number, the number of positions, the positions per block and
+ * the number of blocks), then the file offset of every block and of the end of
+ * the last one, then the blocks.
+ * <p>
+ * A position is indexed from the side of the team with the extra piece, as if
+ * it were white: the team to move (0 when it is the team with the piece), then
+ * its king's square, the other king's square and the piece's square, 6 bits
+ * each. When black has the piece the board is flipped top to bottom first.
+ * <p>
+ * The files are memory mapped and only the blocks that are probed are
+ * inflated. The most recently used blocks are kept on the heap, so the handful
+ * of blocks an endgame keeps returning to are decompressed once. The tables
+ * know nothing of the fifty-move rule and don't cover positions where castling
+ * is still allowed. A tablebase may be probed by several threads at once.
+ */
+public final class Tablebase {
+    static final int MAGIC = 0x43544231;
+    static final int POSITIONS = 2 * 64 * 64 * 64;
+    static final int BLOCK_POSITIONS = 4096;
+    static final int BLOCK_COUNT = POSITIONS / BLOCK_POSITIONS;
+    static final int HEADER_BYTES = 16;
+
+    // The pieces a table can be for, in the order they are generated; pawns
+    // promote into the others
+    static final ChessPiece.PieceType[] TABLE_PIECES = {ChessPiece.PieceType.QUEEN, ChessPiece.PieceType.ROOK,
+            ChessPiece.PieceType.BISHOP, ChessPiece.PieceType.KNIGHT, ChessPiece.PieceType.PAWN};
+
+    private static final int DEFAULT_CACHE_BLOCKS = 256;
+    // Best for the team to move first: quick wins, then draws, then slow losses
+    private static final int WIN_RANK = 1000;
+
+    // Indexed by PieceType ordinal, null where there is no table
+    private final ByteBuffer[] tables = new ByteBuffer[ChessPiece.PieceType.values().length];
+    private final Map<Integer, byte[]> cache;
+
+    private Tablebase(int cacheBlocks) {
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > cacheBlocks;
+            }
+        };
+    }
+
+    /**
+     * Maps every table found in a directory, keeping up to 256 inflated blocks
+     * (1 MB) in memory. Tables missing from the directory are just not covered.
+     *
+     * @param directory where {@link TablebaseGenerator#generate} wrote the tables
+     * @return the tablebase
+     * @throws IOException if a table can't be read or isn't a table
+     */
+    public static Tablebase open(Path directory) throws IOException {
+        return open(directory, DEFAULT_CACHE_BLOCKS);
+    }
+
+    /**
+     * @param directory where {@link TablebaseGenerator#generate} wrote the tables
+     * @param cacheBlocks how many inflated blocks of 4 KB to keep in memory
+     * @return the tablebase
+     * @throws IOException if a table can't be read or isn't a table
+     */
+    public static Tablebase open(Path directory, int cacheBlocks) throws IOException {
+        Tablebase tablebase = new Tablebase(cacheBlocks);
+        for (ChessPiece.PieceType type : TABLE_PIECES) {
+            Path path = directory.resolve(fileName(type));
+            if (Files.isRegularFile(path)) {
+                tablebase.tables[type.ordinal()] = map(path);
+            }
+        }
+        return tablebase;
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (table.capacity() < HEADER_BYTES + (BLOCK_COUNT + 1) * Long.BYTES || table.getInt(0) != MAGIC
+                    || table.getInt(4) != POSITIONS || table.getInt(8) != BLOCK_POSITIONS
+                    || table.getInt(12) != BLOCK_COUNT
+                    || table.getLong(HEADER_BYTES + BLOCK_COUNT * Long.BYTES) != table.capacity()) {
+                throw new IOException(path + " is not a tablebase file");
+            }
+            return table;
+        }
+    }
+
+    /**
+     * @return the name of the file holding the table for a king and the given
+     * piece against a king
+     */
+    static String fileName(ChessPiece.PieceType type) {
+        String letter = type == ChessPiece.PieceType.KNIGHT ? "N" : type.name().substring(0, 1);
+        return "K" + letter + "K.tb";
+    }
+
+    /**
+     * @return the index of a position with the extra piece on white's side
+     */
+    static int index(boolean pieceTeamToMove, int pieceTeamKing, int loneKing, int piece) {
+        return (pieceTeamToMove ? 0 : 1) << 18 | pieceTeamKing << 12 | loneKing << 6 | piece;
+    }
+
+    /**
+     * Looks up the current position of a game
+     *
+     * @param game the game to look up
+     * @return the position's value for the team to move, or null if no table
+     * covers it
+     */
+    public TablebaseResult probe(ChessGame game) {
+        ChessBoard board = game.getBoard();
+        long occupied = board.getOccupancy();
+        int pieceCount = Long.bitCount(occupied);
+        if (pieceCount == 2) {
+            return TablebaseResult.DRAW;
+        }
+        if (pieceCount != 3 || game.hasCastlingRights()) {
+            return null;
+        }
+        long kings = board.getBitboard(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.KING)
+                | board.getBitboard(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.KING);
+        int square = Long.numberOfTrailingZeros(occupied & ~kings);
+        ChessPiece piece = board.getPiece(square);
+        ChessPiece.PieceType type = piece.getPieceType();
+        if (tables[type.ordinal()] == null) {
+            return null;
+        }
+        ChessGame.TeamColor pieceTeam = piece.getTeamColor();
+        ChessGame.TeamColor loneTeam = pieceTeam == ChessGame.TeamColor.WHITE
+                ? ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE;
+        // Flipping the rows turns black's pieces into white's, pawns and all
+        int flip = pieceTeam == ChessGame.TeamColor.WHITE ? 0 : 56;
+        int index = index(game.getTeamTurn() == pieceTeam, board.getKingSquare(pieceTeam) ^ flip,
+                board.getKingSquare(loneTeam) ^ flip, square ^ flip);
+        return TablebaseResult.fromStored(block(type, index / BLOCK_POSITIONS)[index % BLOCK_POSITIONS]);
+    }
+
+    /**
+     * Picks the best move for the team to move: the fastest win, or failing that
+     * a draw, or failing that the slowest loss. The game's moves are played with
+     * doMove and taken back, so it must not be used elsewhere meanwhile.
+     *
+     * @param game the game to pick a move in
+     * @return the best move, or null if no table covers the position or the
+     * team to move has no legal move
+     */
+    public ChessMove bestMove(ChessGame game) {
+        if (probe(game) == null) {
+            return null;
+        }
+        MoveList moves = new MoveList();
+        game.legalMoves(game.getTeamTurn(), moves);
+        int bestMove = 0;
+        int bestRank = Integer.MIN_VALUE;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            game.doMove(move);
+            // Every move keeps the position covered: it either stays in the table,
+            // captures down to bare kings, or promotes into another table
+            TablebaseResult reply = probe(game);
+            game.undoMove();
+            int rank = reply == null ? Integer.MIN_VALUE + 1 : switch (reply.outcome()) {
+                case LOSS -> WIN_RANK - reply.pliesToMate();
+                case DRAW -> 0;
+                case WIN -> -WIN_RANK + reply.pliesToMate();
+            };
+            if (rank > bestRank) {
+                bestRank = rank;
+                bestMove = move;
+            }
+        }
+        return bestMove == 0 ? null : Move.toChessMove(bestMove);
+    }
+
+    /**
+     * Gets an inflated block of a table, from the cache if it is there
+     */
+    private byte[] block(ChessPiece.PieceType type, int block) {
+        int key = type.ordinal() * BLOCK_COUNT + block;
+        synchronized (cache) {
+            byte[] values = cache.get(key);
+            if (values != null) {
+                return values;
+            }
+        }
+        byte[] values = inflate(tables[type.ordinal()], block);
+        synchronized (cache) {
+            cache.put(key, values);
+        }
+        return values;
+    }
+
+    private static byte[] inflate(ByteBuffer table, int block) {
+        int start = (int) table.getLong(HEADER_BYTES + block * Long.BYTES);
+        int end = (int) table.getLong(HEADER_BYTES + (block + 1) * Long.BYTES);
+        byte[] values = new byte[BLOCK_POSITIONS];
+        Inflater inflater = new Inflater();
+        try {
+            // Reads straight from the mapped file, without copying the compressed block
+            inflater.setInput(table.slice(start, end - start));
+            int length = 0;
+            while (length < values.length && !inflater.finished()) {
+                int inflated = inflater.inflate(values, length, values.length - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != values.length) {
+                throw new DataFormatException("block " + block + " holds " + length + " positions");
+            }
+            return values;
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Corrupt tablebase block: " + e.getMessage(), e));
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package chess.tablebase;
+
+import chess.Bitboards;
+import chess.ChessBoard;
+import chess.ChessGame;
+import chess.ChessPiece;
+import chess.InvalidFenException;
+import chess.Move;
+import chess.MoveList;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Works out every table a {@link Tablebase} reads, by retrograde analysis from
+ * the checkmates back.
+ * <p>
+ * First every position's legal moves are listed once, each leading to another
+ * position of the same table or, for captures and promotions, to a known value
+ * elsewhere. Then the values are found a ply at a time: a position is won in n
+ * plies once some move leads to a loss in n - 1, and lost in n plies once every
+ * move leads to a win and the slowest of those wins takes n - 1. Positions
+ * still unsettled when that stops are draws. Pawns promote into the other
+ * tables, so the pawn table is worked out last.
+ */
+public final class TablebaseGenerator {
+    // A move to a value outside the table is stored as a negative number
+    private static final int OUTSIDE = -129;
+    private static final int MAX_PLIES = 126;
+
+    private TablebaseGenerator() { }
+
+    /**
+     * Generates every table into a directory, replacing any that are there. It
+     * takes a few seconds.
+     *
+     * @param directory where to write the tables, which is created if needed
+     * @throws IOException if a table can't be written
+     */
+    public static void generate(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Map<ChessPiece.PieceType, byte[]> tables = new EnumMap<>(ChessPiece.PieceType.class);
+        for (ChessPiece.PieceType type : Tablebase.TABLE_PIECES) {
+            byte[] values = solve(type, tables);
+            tables.put(type, values);
+            write(directory.resolve(Tablebase.fileName(type)), values);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Path.of(args.length > 0 ? args[0] : "tablebases");
+        generate(directory);
+        System.out.println("Wrote the tablebase to " + directory.toAbsolutePath());
+    }
+
+    /**
+     * Works out the value of every position of one table, with white holding
+     * the extra piece
+     *
+     * @param type the extra piece
+     * @param solved the tables already worked out, which promotions lead into
+     */
+    private static byte[] solve(ChessPiece.PieceType type, Map<ChessPiece.PieceType, byte[]> solved) {
+        byte[] values = new byte[Tablebase.POSITIONS];
+        boolean[] settled = new boolean[Tablebase.POSITIONS];
+        int[] firstMove = new int[Tablebase.POSITIONS + 1];
+        int[] targets = new int[Tablebase.POSITIONS * 8];
+        int targetCount = 0;
+        int slowestOutside = 0;
+
+        ChessGame game = emptyGame();
+        MoveList moves = new MoveList();
+        for (int index = 0; index < Tablebase.POSITIONS; index++) {
+            firstMove[index] = targetCount;
+            boolean whiteToMove = index >>> 18 == 0;
+            int whiteKing = index >>> 12 & 63;
+            int blackKing = index >>> 6 & 63;
+            int piece = index & 63;
+            if (!setUp(game, type, whiteToMove, whiteKing, blackKing, piece)) {
+                // Not a position that can happen, so nothing leads to it
+                settled[index] = true;
+                continue;
+            }
+            ChessGame.TeamColor toMove = game.getTeamTurn();
+            moves.clear();
+            game.legalMoves(toMove, moves);
+            if (moves.isEmpty()) {
+                values[index] = (byte) (game.isInCheck(toMove) ? -1 : 0);
+                settled[index] = true;
+                continue;
+            }
+            if (targetCount + moves.size() > targets.length) {
+                targets = Arrays.copyOf(targets, targets.length * 2);
+            }
+            for (int i = 0; i < moves.size(); i++) {
+                int move = moves.get(i);
+                int from = Move.from(move);
+                int to = Move.to(move);
+                ChessPiece.PieceType promotion = Move.promotion(move);
+                if (to == piece) {
+                    // The lone king took the piece, leaving bare kings
+                    targets[targetCount++] = OUTSIDE;
+                } else if (promotion != null) {
+                    int value = solved.get(promotion)[Tablebase.index(false, whiteKing, blackKing, to)];
+                    slowestOutside = Math.max(slowestOutside, plies(value));
+                    targets[targetCount++] = OUTSIDE + value;
+                } else {
+                    targets[targetCount++] = Tablebase.index(!whiteToMove,
+                            from == whiteKing ? to : whiteKing,
+                            from == blackKing ? to : blackKing,
+                            from == piece ? to : piece);
+                }
+            }
+        }
+        firstMove[Tablebase.POSITIONS] = targetCount;
+
+        int[] newlySettled = new int[Tablebase.POSITIONS];
+        int lastProgress = 0;
+        for (int plies = 1; plies <= Math.max(lastProgress, slowestOutside + 1) + 1; plies++) {
+            if (plies > MAX_PLIES) {
+                throw new IllegalStateException("A " + type + " ending takes more than " + MAX_PLIES + " plies");
+            }
+            int settledCount = 0;
+            for (int index = 0; index < Tablebase.POSITIONS; index++) {
+                if (settled[index]) {
+                    continue;
+                }
+                boolean onlyWinsForOpponent = true;
+                boolean winFound = false;
+                int slowestWin = 0;
+                for (int i = firstMove[index]; i < firstMove[index + 1]; i++) {
+                    int target = targets[i];
+                    int value;
+                    if (target >= 0) {
+                        if (!settled[target]) {
+                            onlyWinsForOpponent = false;
+                            continue;
+                        }
+                        value = values[target];
+                    } else {
+                        value = target - OUTSIDE;
+                    }
+                    if (value < 0 && plies(value) <= plies - 1) {
+                        winFound = true;
+                        break;
+                    }
+                    if (value <= 0) {
+                        onlyWinsForOpponent = false;
+                    } else {
+                        slowestWin = Math.max(slowestWin, value);
+                    }
+                }
+                if (winFound) {
+                    newlySettled[settledCount++] = index;
+                    values[index] = (byte) plies;
+                } else if (onlyWinsForOpponent && slowestWin <= plies - 1) {
+                    newlySettled[settledCount++] = index;
+                    values[index] = (byte) -(plies + 1);
+                }
+            }
+            // Settled only now, so nothing above counted a position settled this ply
+            for (int i = 0; i < settledCount; i++) {
+                settled[newlySettled[i]] = true;
+            }
+            if (settledCount > 0) {
+                lastProgress = plies;
+            }
+        }
+        return values;
+    }
+
+    private static int plies(int value) {
+        return value < 0 ? -value - 1 : value;
+    }
+
+    private static ChessGame emptyGame() {
+        try {
+            return ChessGame.fromFen("4k3/8/8/8/8/8/8/4K3 w - - 0 1");
+        } catch (InvalidFenException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Puts a position on the game's board
+     *
+     * @return False if the position can't happen: two pieces on one square, a
+     * pawn on the first or last row, or the team that just moved in check
+     */
+    private static boolean setUp(ChessGame game, ChessPiece.PieceType type, boolean whiteToMove, int whiteKing,
+                                 int blackKing, int piece) {
+        if (whiteKing == blackKing || whiteKing == piece || blackKing == piece) {
+            return false;
+        }
+        int pieceRow = Bitboards.row(piece);
+        if (type == ChessPiece.PieceType.PAWN && (pieceRow == 1 || pieceRow == 8)) {
+            return false;
+        }
+        ChessBoard board = new ChessBoard();
+        board.addPiece(whiteKing, ChessPiece.of(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.KING));
+        board.addPiece(blackKing, ChessPiece.of(ChessGame.TeamColor.BLACK, ChessPiece.PieceType.KING));
+        board.addPiece(piece, ChessPiece.of(ChessGame.TeamColor.WHITE, type));
+        game.setBoard(board);
+        game.setTeamTurn(whiteToMove ? ChessGame.TeamColor.WHITE : ChessGame.TeamColor.BLACK);
+        return !game.isInCheck(whiteToMove ? ChessGame.TeamColor.BLACK : ChessGame.TeamColor.WHITE);
+    }
+
+    private static void write(Path path, byte[] values) throws IOException {
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        long[] offsets = new long[Tablebase.BLOCK_COUNT + 1];
+        long dataStart = Tablebase.HEADER_BYTES + (long) offsets.length * Long.BYTES;
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        byte[] buffer = new byte[Tablebase.BLOCK_POSITIONS * 2];
+        try {
+            for (int block = 0; block < Tablebase.BLOCK_COUNT; block++) {
+                offsets[block] = dataStart + blocks.size();
+                deflater.reset();
+                deflater.setInput(values, block * Tablebase.BLOCK_POSITIONS, Tablebase.BLOCK_POSITIONS);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    blocks.write(buffer, 0, deflater.deflate(buffer));
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+        offsets[Tablebase.BLOCK_COUNT] = dataStart + blocks.size();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(Tablebase.MAGIC);
+            out.writeInt(Tablebase.POSITIONS);
+            out.writeInt(Tablebase.BLOCK_POSITIONS);
+            out.writeInt(Tablebase.BLOCK_COUNT);
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            blocks.writeTo(out);
+        }
+    }
+}
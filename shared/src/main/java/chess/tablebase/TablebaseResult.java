@@ -0,0 +1,31 @@
+package chess.tablebase;
+
+/**
+ * The value of a position with perfect play from both teams, for the team to
+ * move
+ *
+ * @param outcome whether the team to move wins, draws or loses
+ * @param pliesToMate how many moves, counting both teams, until checkmate with
+ * the winner mating as fast as it can and the loser holding out as long as it
+ * can; 0 for a draw
+ */
+public record TablebaseResult(Outcome outcome, int pliesToMate) {
+    public enum Outcome {
+        WIN,
+        DRAW,
+        LOSS
+    }
+
+    static final TablebaseResult DRAW = new TablebaseResult(Outcome.DRAW, 0);
+
+    /**
+     * Unpacks a value stored in a table: 0 for a draw, d above 0 for a win in d
+     * plies, and -(d + 1) for a loss in d plies
+     */
+    static TablebaseResult fromStored(int value) {
+        if (value == 0) {
+            return DRAW;
+        }
+        return value > 0 ? new TablebaseResult(Outcome.WIN, value) : new TablebaseResult(Outcome.LOSS, -value - 1);
+    }
+}
@@ -5,6 +5,7 @@ import chess.ChessMove;
 public class ConnectCommand extends UserGameCommand {
 
     private JoinType joinType;
+    private boolean versusEngine;
 
     public enum JoinType {
         WHITE,
@@ -17,7 +18,19 @@ public class ConnectCommand extends UserGameCommand {
         this.joinType = type;
     }
 
+    /**
+     * @param versusEngine whether the server's engine should take the other color
+     */
+    public ConnectCommand (String authToken, Integer gameID, JoinType type, boolean versusEngine) {
+        this(authToken, gameID, type);
+        this.versusEngine = versusEngine;
+    }
+
     public JoinType getJoinType() {
         return joinType;
     }
+
+    public boolean isVersusEngine() {
+        return versusEngine;
+    }
 }
\ No newline at end of file
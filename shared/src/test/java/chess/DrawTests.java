@@ -0,0 +1,68 @@
+package chess;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+public class DrawTests {
+
+    @Test
+    public void threefoldRepetition() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        for (int i = 0; i < 2; i++) {
+            Assertions.assertFalse(game.isThreefoldRepetition());
+            game.makeMove(move(1, 7, 3, 6));
+            game.makeMove(move(8, 7, 6, 6));
+            game.makeMove(move(3, 6, 1, 7));
+            game.makeMove(move(6, 6, 8, 7));
+        }
+        Assertions.assertTrue(game.isThreefoldRepetition());
+        Assertions.assertEquals(GameStatus.Result.REPETITION, game.getStatus().getResult());
+    }
+
+    @Test
+    public void repetitionCountsMovesPlayedWithDoMove() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        game.makeMove(move(1, 7, 3, 6));
+        game.makeMove(move(8, 7, 6, 6));
+        game.makeMove(move(3, 6, 1, 7));
+        game.makeMove(move(6, 6, 8, 7));
+        game.doMove(move(1, 7, 3, 6));
+        game.doMove(move(8, 7, 6, 6));
+        game.doMove(move(3, 6, 1, 7));
+        game.doMove(move(6, 6, 8, 7));
+        Assertions.assertTrue(game.isThreefoldRepetition());
+
+        game.undoMove();
+        Assertions.assertFalse(game.isThreefoldRepetition());
+        Assertions.assertEquals(GameStatus.Result.IN_PROGRESS, game.getStatus().getResult());
+    }
+
+    @Test
+    public void fiftyMoveRule() throws InvalidFenException, InvalidMoveException {
+        ChessGame game = ChessGame.fromFen("4k3/8/8/8/8/8/4P3/R3K3 w - - 99 80");
+        Assertions.assertFalse(game.isFiftyMoveRule());
+        game.makeMove(move(1, 1, 1, 2));
+        Assertions.assertTrue(game.isFiftyMoveRule());
+        Assertions.assertEquals(GameStatus.Result.FIFTY_MOVES, game.getStatus().getResult());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "4k3/8/8/8/8/8/8/4K3 w - - 0 1, true",
+            "4k3/8/8/8/8/8/8/2B1K3 w - - 0 1, true",
+            "4k3/8/8/8/8/8/8/1N2K3 w - - 0 1, true",
+            "2b1k3/8/8/8/8/8/8/3BK3 w - - 0 1, true",
+            "3bk3/8/8/8/8/8/8/3BK3 w - - 0 1, false",
+            "4k3/8/8/8/8/8/8/1NN1K3 w - - 0 1, false",
+            "4k3/8/8/8/8/8/4P3/4K3 w - - 0 1, false"
+    })
+    public void insufficientMaterial(String fen, boolean expected) throws InvalidFenException {
+        Assertions.assertEquals(expected, ChessGame.fromFen(fen).isInsufficientMaterial());
+    }
+
+    private static ChessMove move(int startRow, int startCol, int endRow, int endCol) {
+        return new ChessMove(ChessPosition.of(startRow, startCol), ChessPosition.of(endRow, endCol), null);
+    }
+}
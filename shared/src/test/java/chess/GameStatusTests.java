@@ -0,0 +1,47 @@
+package chess;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GameStatusTests {
+
+    @Test
+    public void statusIsReusedUntilTheGameChanges() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        GameStatus status = game.getStatus();
+        Assertions.assertSame(status, game.getStatus());
+        Assertions.assertEquals(20, status.getLegalMoves().size());
+
+        game.makeMove(new ChessMove(ChessPosition.of(2, 5), ChessPosition.of(4, 5), null));
+        GameStatus afterMove = game.getStatus();
+        Assertions.assertNotSame(status, afterMove);
+        Assertions.assertEquals(ChessGame.TeamColor.BLACK, afterMove.getTeamToMove());
+    }
+
+    @Test
+    public void statusSeesChangesMadeToTheBoard() {
+        ChessGame game = new ChessGame();
+        Assertions.assertEquals(2, game.getStatus().getMoves(ChessPosition.of(1, 2)).size());
+
+        game.getBoard().addPiece(ChessPosition.of(3, 3), null);
+        game.getBoard().addPiece(ChessPosition.of(3, 1),
+                ChessPiece.of(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.PAWN));
+        Assertions.assertEquals(1, game.getStatus().getMoves(ChessPosition.of(1, 2)).size());
+    }
+
+    @Test
+    public void foolsMateIsCheckmate() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        game.makeMove(new ChessMove(ChessPosition.of(2, 6), ChessPosition.of(3, 6), null));
+        game.makeMove(new ChessMove(ChessPosition.of(7, 5), ChessPosition.of(5, 5), null));
+        game.makeMove(new ChessMove(ChessPosition.of(2, 7), ChessPosition.of(4, 7), null));
+        game.makeMove(new ChessMove(ChessPosition.of(8, 4), ChessPosition.of(4, 8), null));
+
+        GameStatus status = game.getStatus();
+        Assertions.assertTrue(status.isInCheck());
+        Assertions.assertFalse(status.hasLegalMove());
+        Assertions.assertEquals(GameStatus.Result.CHECKMATE, status.getResult());
+        Assertions.assertTrue(game.isInCheckmate(ChessGame.TeamColor.WHITE));
+        Assertions.assertFalse(game.isInStalemate(ChessGame.TeamColor.WHITE));
+    }
+}
@@ -0,0 +1,136 @@
+package chess;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class HistoryTests {
+
+    @Test
+    public void undoAndRedoWalkTheWholeGame() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        List<String> positions = playRandomGame(game, 150);
+
+        for (int ply = positions.size() - 1; ply > 0; ply--) {
+            Assertions.assertTrue(game.undo());
+            Assertions.assertEquals(positions.get(ply - 1), game.toFen());
+        }
+        Assertions.assertFalse(game.undo());
+        for (int ply = 1; ply < positions.size(); ply++) {
+            Assertions.assertTrue(game.redo());
+            Assertions.assertEquals(positions.get(ply), game.toFen());
+        }
+        Assertions.assertFalse(game.redo());
+    }
+
+    @Test
+    public void seekReachesEveryPly() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        List<String> positions = playRandomGame(game, 150);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            int ply = random.nextInt(positions.size());
+            game.seek(ply);
+            Assertions.assertEquals(ply, game.getHistoryPly());
+            Assertions.assertEquals(positions.get(ply), game.toFen());
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> game.seek(positions.size()));
+    }
+
+    @Test
+    public void moveAfterUndoReplacesTheRest() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        game.makeMove(new ChessMove(ChessPosition.of(2, 5), ChessPosition.of(4, 5), null));
+        game.makeMove(new ChessMove(ChessPosition.of(7, 5), ChessPosition.of(5, 5), null));
+        game.undo();
+        game.makeMove(new ChessMove(ChessPosition.of(7, 4), ChessPosition.of(5, 4), null));
+
+        Assertions.assertEquals(2, game.getHistoryLength());
+        Assertions.assertFalse(game.redo());
+        Assertions.assertEquals(new ChessMove(ChessPosition.of(7, 4), ChessPosition.of(5, 4), null),
+                game.getMoveHistory().get(1));
+    }
+
+    @Test
+    public void takingBackTheLastMoveReopensTheGame() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        game.makeMove(new ChessMove(ChessPosition.of(2, 6), ChessPosition.of(3, 6), null));
+        game.makeMove(new ChessMove(ChessPosition.of(7, 5), ChessPosition.of(5, 5), null));
+        game.makeMove(new ChessMove(ChessPosition.of(2, 7), ChessPosition.of(4, 7), null));
+        game.makeMove(new ChessMove(ChessPosition.of(8, 4), ChessPosition.of(4, 8), null));
+        game.gameIsOver();
+
+        Assertions.assertTrue(game.undo());
+        Assertions.assertFalse(game.isGameOver());
+
+        game.redo();
+        game.gameIsOver();
+        game.seek(0);
+        Assertions.assertFalse(game.isGameOver());
+    }
+
+    @Test
+    public void jsonHoldsOnlyTheMovesPlayed() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        int plies = playRandomGame(game, 40).size() - 1;
+
+        JsonObject json = new Gson().toJsonTree(game).getAsJsonObject();
+        Assertions.assertEquals(plies, json.getAsJsonArray("history").size());
+        Assertions.assertFalse(json.has("historyKeys"));
+    }
+
+    @Test
+    public void repetitionsAreFoundAfterJson() throws InvalidMoveException {
+        ChessMove[] knightsOutAndBack = {
+            new ChessMove(ChessPosition.of(1, 7), ChessPosition.of(3, 6), null),
+            new ChessMove(ChessPosition.of(8, 7), ChessPosition.of(6, 6), null),
+            new ChessMove(ChessPosition.of(3, 6), ChessPosition.of(1, 7), null),
+            new ChessMove(ChessPosition.of(6, 6), ChessPosition.of(8, 7), null),
+        };
+        ChessGame game = new ChessGame();
+        for (int i = 0; i < 7; i++) {
+            game.makeMove(knightsOutAndBack[i % 4]);
+        }
+
+        ChessGame copy = new Gson().fromJson(new Gson().toJson(game), ChessGame.class);
+        Assertions.assertFalse(copy.isThreefoldRepetition());
+        copy.makeMove(knightsOutAndBack[3]);
+        Assertions.assertTrue(copy.isThreefoldRepetition());
+    }
+
+    @Test
+    public void historySurvivesJson() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        List<String> positions = playRandomGame(game, 60);
+        game.seek(37);
+
+        ChessGame copy = new Gson().fromJson(new Gson().toJson(game), ChessGame.class);
+        Assertions.assertEquals(positions.get(37), copy.toFen());
+        copy.seek(3);
+        Assertions.assertEquals(positions.get(3), copy.toFen());
+        copy.seek(positions.size() - 1);
+        Assertions.assertEquals(positions.get(positions.size() - 1), copy.toFen());
+    }
+
+    /**
+     * Plays random legal moves, returning the position before the first move and
+     * after each one
+     */
+    private static List<String> playRandomGame(ChessGame game, int plies) throws InvalidMoveException {
+        Random random = new Random(plies);
+        List<String> positions = new ArrayList<>();
+        positions.add(game.toFen());
+        for (int i = 0; i < plies && !game.getStatus().isGameOver(); i++) {
+            List<ChessMove> moves = new ArrayList<>(game.getStatus().getLegalMoves());
+            game.makeMove(moves.get(random.nextInt(moves.size())));
+            positions.add(game.toFen());
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,76 @@
+package chess;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import passoff.chess.TestUtilities;
+
+import java.util.Collection;
+import java.util.HashSet;
+
+public class IsLegalTests {
+
+    @Test
+    public void agreesWithLegalMovesOnEveryMove() {
+        ChessGame kiwipete = game("""
+                |r| | | |k| | |r|
+                |p| |p|p|q|p|b| |
+                |b|n| | |p|n|p| |
+                | | | |P|N| | | |
+                | |p| | |P| | | |
+                | | |N| | |Q| |p|
+                |P|P|P|B|B|P|P|P|
+                |R| | | |K| | |R|
+                """);
+        ChessGame promotionsAndPins = game("""
+                |r| | | |k| | |r|
+                |P|p|p|p| |p|p|p|
+                | |b| | | |n|b|N|
+                |n|P| | | | | | |
+                |B|B|P| |P| | | |
+                |q| | | | |N| | |
+                |P|p| |P| | |P|P|
+                |R| | |Q| |R|K| |
+                """);
+        ChessGame enPassantPin = game("""
+                | | | | | | | | |
+                | | | | | | | | |
+                | | | | | | | | |
+                | | | | | | | | |
+                |k| | | |p| | |Q|
+                | | | | | | | | |
+                | | | |P| | | | |
+                | | | |K| | | | |
+                """);
+        enPassantPin.doMove(new ChessMove(ChessPosition.of(2, 4), ChessPosition.of(4, 4), null));
+
+        for (ChessGame game : new ChessGame[] {new ChessGame(), kiwipete, promotionsAndPins, enPassantPin}) {
+            for (ChessGame.TeamColor color : ChessGame.TeamColor.values()) {
+                assertAgrees(game, color);
+            }
+        }
+    }
+
+    private static void assertAgrees(ChessGame game, ChessGame.TeamColor color) {
+        Collection<ChessMove> legal = new HashSet<>(game.legalMoves(color));
+        ChessPiece.PieceType[] promotions = {null, ChessPiece.PieceType.QUEEN, ChessPiece.PieceType.ROOK,
+                ChessPiece.PieceType.BISHOP, ChessPiece.PieceType.KNIGHT, ChessPiece.PieceType.KING};
+        for (int from = 0; from < 64; from++) {
+            ChessPiece piece = game.getBoard().getPiece(from);
+            if (piece == null || piece.getTeamColor() != color) {
+                continue;
+            }
+            for (int to = 0; to < 64; to++) {
+                for (ChessPiece.PieceType promotion : promotions) {
+                    ChessMove move = new ChessMove(ChessPosition.ofSquare(from), ChessPosition.ofSquare(to), promotion);
+                    Assertions.assertEquals(legal.contains(move), game.isLegal(move), "Disagreed on " + move);
+                }
+            }
+        }
+    }
+
+    private static ChessGame game(String boardText) {
+        ChessGame game = new ChessGame();
+        game.setBoard(TestUtilities.loadBoard(boardText));
+        return game;
+    }
+}
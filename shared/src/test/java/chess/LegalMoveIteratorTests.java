@@ -0,0 +1,47 @@
+package chess;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import passoff.chess.TestUtilities;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class LegalMoveIteratorTests {
+
+    @Test
+    public void iteratorGivesTheSameMovesAsLegalMoves() {
+        ChessGame game = new ChessGame();
+        game.setBoard(TestUtilities.loadBoard("""
+                |r| | | |k| | |r|
+                |p| |p|p|q|p|b| |
+                |b|n| | |p|n|p| |
+                | | | |P|N| | | |
+                | |p| | |P| | | |
+                | | |N| | |Q| |p|
+                |P|P|P|B|B|P|P|P|
+                |R| | | |K| | |R|
+                """));
+
+        Set<ChessMove> iterated = new HashSet<>();
+        LegalMoveIterator moves = game.legalMoveIterator(ChessGame.TeamColor.WHITE);
+        while (moves.hasNext()) {
+            Assertions.assertTrue(iterated.add(Move.toChessMove(moves.nextInt())), "Move given twice");
+        }
+        Assertions.assertEquals(new HashSet<>(game.legalMoves(ChessGame.TeamColor.WHITE)), iterated);
+        Assertions.assertEquals(48, iterated.size());
+    }
+
+    @Test
+    public void kingMovesComeFirst() {
+        ChessGame game = new ChessGame();
+        LegalMoveIterator moves = game.legalMoveIterator(ChessGame.TeamColor.WHITE);
+        Assertions.assertTrue(moves.hasNext());
+        Assertions.assertNotEquals(Bitboards.square(1, 5), Move.from(moves.nextInt()));
+
+        game.getBoard().addPiece(ChessPosition.of(1, 6), null);
+        moves = game.legalMoveIterator(ChessGame.TeamColor.WHITE);
+        Assertions.assertEquals(Bitboards.square(1, 5), Move.from(moves.nextInt()));
+        Assertions.assertTrue(game.hasAnyLegalMove(ChessGame.TeamColor.BLACK));
+    }
+}
@@ -0,0 +1,89 @@
+package chess;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Counts the leaf nodes of the move tree to a fixed depth from well known
+ * reference positions, given as FEN, and compares them with the published
+ * counts. Any move generation bug, however rare, changes the count somewhere
+ * in the tree.
+ * <p>
+ * Moves come from ChessGame.validMoves, the same path the server uses, and are
+ * played with doMove/undoMove. Each case prints its speed in nodes per second.
+ */
+public class PerftTests {
+
+    static Stream<Arguments> positions() {
+        return Stream.of(
+                Arguments.of("Start position",
+                        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 4, 197281L),
+                Arguments.of("Kiwipete",
+                        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", 3, 97862L),
+                Arguments.of("Position 3",
+                        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", 5, 674624L),
+                Arguments.of("Position 4",
+                        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", 3, 9467L),
+                Arguments.of("Position 5",
+                        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", 3, 62379L),
+                Arguments.of("Illegal en passant exposes king",
+                        "8/5bk1/8/2Pp4/8/1K6/8/8 w - d6 0 1", 6, 824064L),
+                Arguments.of("En passant gives check",
+                        "8/8/1k6/2b5/2pP4/8/5K2/8 b - d3 0 1", 6, 1440467L),
+                Arguments.of("Short castle gives check",
+                        "5k2/8/8/8/8/8/8/4K2R w K - 0 1", 6, 661072L),
+                Arguments.of("Long castle gives check",
+                        "3k4/8/8/8/8/8/8/R3K3 w Q - 0 1", 6, 803711L),
+                Arguments.of("Castling rights lost to rook captures",
+                        "r3k2r/1b4bq/8/8/8/8/7B/R3K2R w KQkq - 0 1", 4, 1274206L),
+                Arguments.of("Castling prevented",
+                        "r3k2r/8/3Q4/8/8/5q2/8/R3K2R b KQkq - 0 1", 4, 1720476L),
+                Arguments.of("Promote out of check",
+                        "2K2r2/4P3/8/8/8/8/8/3k4 w - - 0 1", 6, 3821001L),
+                Arguments.of("Discovered check",
+                        "8/8/1P2K3/8/2n5/1q6/8/5k2 b - - 0 1", 5, 1004658L),
+                Arguments.of("Self stalemate",
+                        "K1k5/8/P7/8/8/8/8/8 w - - 0 1", 6, 2217L),
+                Arguments.of("Stalemate and checkmate",
+                        "8/8/2k5/5q2/5n2/8/5K2/8 b - - 0 1", 4, 23527L)
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("positions")
+    public void perft(String name, String fen, int depth, long expectedNodes) throws InvalidFenException {
+        ChessGame game = ChessGame.fromFen(fen);
+        long keyBefore = game.getZobristKey();
+        long start = System.nanoTime();
+        long nodes = countNodes(game, depth);
+        long elapsed = Math.max(System.nanoTime() - start, 1);
+
+        System.out.printf("%s: perft(%d) = %d, %.0f nodes/s%n", name, depth, nodes, nodes * 1e9 / elapsed);
+        Assertions.assertEquals(expectedNodes, nodes, "Wrong node count for " + name);
+        Assertions.assertEquals(keyBefore, game.getZobristKey(), "Position was not restored after perft");
+    }
+
+    private static long countNodes(ChessGame game, int depth) {
+        List<ChessMove> moves = new ArrayList<>();
+        for (ChessPosition position : game.getBoard().getPiecePositions(game.getTeamTurn())) {
+            moves.addAll(game.validMoves(position));
+        }
+        // The moves at the last ply are counted without being played
+        if (depth == 1) {
+            return moves.size();
+        }
+        long nodes = 0;
+        for (ChessMove move : moves) {
+            game.doMove(move);
+            nodes += countNodes(game, depth - 1);
+            game.undoMove();
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,36 @@
+package chess;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PositionSnapshotTests {
+
+    @Test
+    public void restoredGameMatchesTheOriginal() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        game.makeMove(new ChessMove(ChessPosition.of(2, 5), ChessPosition.of(4, 5), null));
+        game.makeMove(new ChessMove(ChessPosition.of(7, 1), ChessPosition.of(6, 1), null));
+        game.makeMove(new ChessMove(ChessPosition.of(4, 5), ChessPosition.of(5, 5), null));
+        game.makeMove(new ChessMove(ChessPosition.of(7, 4), ChessPosition.of(5, 4), null));
+
+        ChessGame copy = ChessGame.fromSnapshot(game.snapshot());
+        Assertions.assertEquals(game, copy);
+        Assertions.assertEquals(game.getZobristKey(), copy.getZobristKey());
+        Assertions.assertEquals(game.getPossibleEnPassant(), copy.getPossibleEnPassant());
+        Assertions.assertEquals(game.snapshot(), copy.snapshot());
+    }
+
+    @Test
+    public void snapshotDoesNotChangeWithTheGame() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        PositionSnapshot snapshot = game.snapshot();
+        game.makeMove(new ChessMove(ChessPosition.of(2, 5), ChessPosition.of(4, 5), null));
+        snapshot.getSquares()[Bitboards.square(1, 5)] = 0;
+
+        Assertions.assertEquals(ChessGame.TeamColor.WHITE, snapshot.getTeamTurn());
+        Assertions.assertEquals(ChessPiece.of(ChessGame.TeamColor.WHITE, ChessPiece.PieceType.PAWN),
+                snapshot.getPiece(ChessPosition.of(2, 5)));
+        Assertions.assertNotNull(snapshot.getPiece(ChessPosition.of(1, 5)));
+        Assertions.assertEquals(new ChessGame(), ChessGame.fromSnapshot(snapshot));
+    }
+}
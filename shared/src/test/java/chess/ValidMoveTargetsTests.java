@@ -0,0 +1,41 @@
+package chess;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ValidMoveTargetsTests {
+
+    @Test
+    public void targetsMatchValidMoves() throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        Random random = new Random(20);
+        for (int ply = 0; ply < 80 && !game.getStatus().isGameOver(); ply++) {
+            for (int square = 0; square < 64; square++) {
+                ChessPosition position = ChessPosition.ofSquare(square);
+                long expected = 0L;
+                if (game.getBoard().getPiece(position) != null) {
+                    for (ChessMove move : game.validMoves(position)) {
+                        expected |= 1L << Bitboards.square(move.getEndPosition());
+                    }
+                }
+                Assertions.assertEquals(expected, game.validMoveTargets(position), position.toString());
+            }
+            List<ChessMove> moves = new ArrayList<>(game.getStatus().getLegalMoves());
+            game.makeMove(moves.get(random.nextInt(moves.size())));
+        }
+    }
+
+    @Test
+    public void movesGoIntoTheCallersBuffer() {
+        ChessGame game = new ChessGame();
+        MoveList moves = new MoveList();
+        game.validMoves(ChessPosition.of(1, 2), moves);
+        game.validMoves(ChessPosition.of(4, 4), moves);
+        Assertions.assertEquals(2, moves.size());
+        Assertions.assertEquals(game.validMoves(ChessPosition.of(1, 2)).size(), moves.size());
+    }
+}
@@ -0,0 +1,128 @@
+package chess.book;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.InvalidFenException;
+import chess.InvalidMoveException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+public class OpeningBookTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void movesAreWeightedByHowOftenTheyWerePlayed() throws IOException, InvalidMoveException {
+        ChessGame kingsPawn = play("e2e4", "e7e5", "g1f3");
+        ChessGame queensPawn = play("d2d4", "d7d5");
+        Path path = directory.resolve("book.bin");
+        OpeningBook.write(path, List.of(kingsPawn, kingsPawn, queensPawn), 10);
+
+        OpeningBook book = OpeningBook.open(path);
+        Assertions.assertEquals(5, book.size());
+        Assertions.assertEquals(80, Files.size(path));
+
+        List<BookEntry> start = book.lookup(new ChessGame());
+        Assertions.assertEquals(2, start.size());
+        for (BookEntry entry : start) {
+            Assertions.assertEquals(entry.move().equals(move("e2e4")) ? 2 : 1, entry.weight());
+        }
+        Assertions.assertTrue(book.isBookMove(new ChessGame(), move("d2d4")));
+        Assertions.assertFalse(book.isBookMove(new ChessGame(), move("c2c4")));
+
+        int kingsPawnPicks = 0;
+        Random random = new Random(3);
+        for (int i = 0; i < 3000; i++) {
+            if (book.pickMove(new ChessGame(), random).equals(move("e2e4"))) {
+                kingsPawnPicks++;
+            }
+        }
+        Assertions.assertTrue(kingsPawnPicks > 1800 && kingsPawnPicks < 2200, kingsPawnPicks + " of 3000");
+
+        Assertions.assertNull(book.pickMove(play("a2a3"), random));
+    }
+
+    @Test
+    public void castlingRoundTripsThroughTheRookSquare() throws IOException, InvalidFenException,
+            InvalidMoveException {
+        ChessGame game = ChessGame.fromFen("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+        game.makeMove(move("e1g1"));
+        game.makeMove(move("e8c8"));
+        Path path = directory.resolve("castling.bin");
+        OpeningBook.write(path, List.of(game), 2);
+
+        // Polyglot writes castling as the king taking its rook
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path));
+        List<Integer> stored = List.of(file.getShort(8) & 0xFFFF, file.getShort(24) & 0xFFFF);
+        int e1h1 = 4 << 6 | 7;
+        int e8a8 = 7 << 9 | 4 << 6 | 7 << 3;
+        Assertions.assertTrue(stored.containsAll(List.of(e1h1, e8a8)), stored.toString());
+
+        OpeningBook book = OpeningBook.open(path);
+        game.seek(0);
+        Assertions.assertEquals(List.of(new BookEntry(move("e1g1"), 1)), book.lookup(game));
+        game.seek(1);
+        Assertions.assertEquals(List.of(new BookEntry(move("e8c8"), 1)), book.lookup(game));
+    }
+
+    @Test
+    public void positionsHashToThePolyglotReferenceKeys() throws InvalidMoveException {
+        Assertions.assertEquals(0x463b96181691fc9cL, new ChessGame().getPolyglotKey());
+        Assertions.assertEquals(0x823c9b50fd114196L, play("e2e4").getPolyglotKey());
+        // No black pawn can take en passant on d6, so the file doesn't count
+        Assertions.assertEquals(0x0756b94461c50fb0L, play("e2e4", "d7d5").getPolyglotKey());
+        // The pawn on e5 can take on f6, so that file does
+        Assertions.assertEquals(0x22a48b5a8e47ff78L, play("e2e4", "d7d5", "e4e5", "f7f5").getPolyglotKey());
+        Assertions.assertEquals(0x00fdd303c946bdd9L,
+                play("e2e4", "d7d5", "e4e5", "f7f5", "e1e2", "e8f7").getPolyglotKey());
+        Assertions.assertEquals(0x5c3f9b829b279560L,
+                play("a2a4", "b7b5", "h2h4", "b5b4", "c2c4", "b4c3", "a1a3").getPolyglotKey());
+    }
+
+    @Test
+    public void booksWrittenElsewhereAreRead() throws IOException {
+        // One entry as any Polyglot tool writes it: 1.e4 from the starting position
+        ByteBuffer entry = ByteBuffer.allocate(16);
+        entry.putLong(0x463b96181691fc9cL);
+        entry.putShort((short) (1 << 9 | 4 << 6 | 3 << 3 | 4));
+        entry.putShort((short) 7);
+        Path path = directory.resolve("elsewhere.bin");
+        Files.write(path, entry.array());
+
+        OpeningBook book = OpeningBook.open(path);
+        Assertions.assertEquals(List.of(new BookEntry(move("e2e4"), 7)), book.lookup(new ChessGame()));
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        Path path = directory.resolve("truncated.bin");
+        Files.write(path, new byte[20]);
+        Assertions.assertThrows(IOException.class, () -> OpeningBook.open(path));
+    }
+
+    private static ChessGame play(String... moves) throws InvalidMoveException {
+        ChessGame game = new ChessGame();
+        for (String move : moves) {
+            game.makeMove(move(move));
+        }
+        return game;
+    }
+
+    private static ChessMove move(String text) {
+        return new ChessMove(square(text.substring(0, 2)), square(text.substring(2, 4)), null);
+    }
+
+    private static ChessPosition square(String text) {
+        return ChessPosition.of(text.charAt(1) - '0', text.charAt(0) - 'a' + 1);
+    }
+}
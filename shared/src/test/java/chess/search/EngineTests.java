@@ -0,0 +1,102 @@
+package chess.search;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.InvalidFenException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class EngineTests {
+
+    @Test
+    public void findsMateInOne() throws InvalidFenException {
+        ChessGame game = ChessGame.fromFen("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1");
+        SearchResult result = new Engine().search(game, SearchLimits.depth(4));
+        Assertions.assertEquals(new ChessMove(ChessPosition.of(1, 1), ChessPosition.of(8, 1), null),
+                result.bestMove());
+        Assertions.assertEquals(Engine.MATE_SCORE - 1, result.score());
+    }
+
+    @Test
+    public void takesTheHangingQueen() throws InvalidFenException {
+        ChessGame game = ChessGame.fromFen("4k3/8/8/3q4/8/8/3R4/4K3 w - - 0 1");
+        SearchResult result = new Engine().search(game, SearchLimits.depth(5));
+        Assertions.assertEquals(new ChessMove(ChessPosition.of(2, 4), ChessPosition.of(5, 4), null),
+                result.bestMove());
+        Assertions.assertTrue(result.score() > 300, "score " + result.score());
+    }
+
+    @Test
+    public void leavesTheGameAsItWas() throws InvalidFenException {
+        String fen = "r1bqkb1r/pppp1ppp/2n2n2/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq - 4 4";
+        ChessGame game = ChessGame.fromFen(fen);
+        long key = game.getZobristKey();
+        SearchResult result = new Engine().search(game, SearchLimits.nodes(50_000));
+
+        Assertions.assertEquals(fen, game.toFen());
+        Assertions.assertEquals(key, game.getZobristKey());
+        Assertions.assertTrue(game.isLegal(result.bestMove()));
+        // Scholar's mate
+        Assertions.assertEquals(new ChessMove(ChessPosition.of(5, 8), ChessPosition.of(7, 6), null),
+                result.bestMove());
+    }
+
+    @Test
+    public void helperThreadsShareTheSearch() throws InvalidFenException {
+        String fen = "r1bqkb1r/pppp1ppp/2n2n2/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq - 4 4";
+        ChessGame game = ChessGame.fromFen(fen);
+        Engine engine = new Engine(8, 3);
+        SearchResult result = engine.search(game, SearchLimits.depth(5));
+
+        Assertions.assertEquals(fen, game.toFen());
+        Assertions.assertEquals(new ChessMove(ChessPosition.of(5, 8), ChessPosition.of(7, 6), null),
+                result.bestMove());
+        Assertions.assertEquals(3, result.threadNodes().length);
+        long total = 0;
+        for (long nodes : result.threadNodes()) {
+            Assertions.assertTrue(nodes > 0);
+            total += nodes;
+        }
+        Assertions.assertEquals(total, result.nodes());
+    }
+
+    @Test
+    public void continuedSearchesBuildOnEachOther() throws InvalidFenException {
+        ChessGame game = ChessGame.fromFen("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3");
+        Engine engine = new Engine(8);
+        int depth = engine.search(game, SearchLimits.nodes(20_000)).depth();
+        for (int slice = 0; slice < 5; slice++) {
+            SearchResult result = engine.continueSearch(game, SearchLimits.nodes(20_000));
+            Assertions.assertTrue(result.depth() >= depth, result.depth() + " after " + depth);
+            depth = result.depth();
+        }
+        Assertions.assertTrue(Engine.isMateScore(Engine.MATE_SCORE - 1));
+        Assertions.assertFalse(Engine.isMateScore(900));
+    }
+
+    @Test
+    public void noMoveWhenCheckmated() throws InvalidFenException {
+        ChessGame game = ChessGame.fromFen("R5k1/5ppp/8/8/8/8/8/6K1 b - - 1 1");
+        SearchResult result = new Engine().search(game, SearchLimits.depth(3));
+        Assertions.assertNull(result.bestMove());
+        Assertions.assertEquals(-Engine.MATE_SCORE, result.score());
+    }
+
+    @Test
+    public void deeperEntriesAreKept() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = 12345L;
+        long collidingKey = key + table.size();
+        table.store(key, 0, 10, 6, TranspositionTable.EXACT);
+        table.store(collidingKey, 0, 20, 3, TranspositionTable.EXACT);
+        Assertions.assertEquals(6, TranspositionTable.depth(table.probe(key)));
+        Assertions.assertEquals(0L, table.probe(collidingKey));
+
+        table.newSearch();
+        table.store(collidingKey, 0, -20, 3, TranspositionTable.UPPER);
+        Assertions.assertEquals(0L, table.probe(key));
+        Assertions.assertEquals(-20, TranspositionTable.score(table.probe(collidingKey)));
+        Assertions.assertEquals(TranspositionTable.UPPER, TranspositionTable.bound(table.probe(collidingKey)));
+    }
+}
@@ -0,0 +1,90 @@
+package chess.tablebase;
+
+import chess.ChessGame;
+import chess.ChessMove;
+import chess.ChessPosition;
+import chess.GameStatus;
+import chess.InvalidFenException;
+import chess.search.Engine;
+import chess.search.SearchLimits;
+import chess.search.SearchResult;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class TablebaseTests {
+
+    @TempDir
+    static Path directory;
+
+    private static Tablebase tablebase;
+
+    @BeforeAll
+    public static void generate() throws IOException {
+        TablebaseGenerator.generate(directory);
+        // A small cache, so probes also go through evicted blocks
+        tablebase = Tablebase.open(directory, 4);
+    }
+
+    @Test
+    public void matesAreCountedInPlies() throws InvalidFenException {
+        Assertions.assertEquals(new TablebaseResult(TablebaseResult.Outcome.WIN, 1),
+                probe("k7/8/1K6/8/8/8/7Q/8 w - - 0 1"));
+        Assertions.assertEquals(new TablebaseResult(TablebaseResult.Outcome.LOSS, 0),
+                probe("k7/1Q6/1K6/8/8/8/8/8 b - - 0 1"));
+        // A king in front of its pawn on the sixth row wins whoever moves
+        Assertions.assertEquals(new TablebaseResult(TablebaseResult.Outcome.WIN, 21),
+                probe("4k3/8/4K3/4P3/8/8/8/8 w - - 0 1"));
+        Assertions.assertEquals(new TablebaseResult(TablebaseResult.Outcome.LOSS, 24),
+                probe("4k3/8/4K3/4P3/8/8/8/8 b - - 0 1"));
+    }
+
+    @Test
+    public void blackPiecesAreLookedUpFlipped() throws InvalidFenException {
+        Assertions.assertEquals(new TablebaseResult(TablebaseResult.Outcome.WIN, 1),
+                probe("K7/8/1k6/8/8/8/7q/8 b - - 0 1"));
+        Assertions.assertEquals(new TablebaseResult(TablebaseResult.Outcome.LOSS, 24),
+                probe("8/8/8/8/4p3/4k3/8/4K3 w - - 0 1"));
+    }
+
+    @Test
+    public void uncoveredPositionsAreNotGuessed() throws InvalidFenException {
+        Assertions.assertNull(probe("4k3/8/8/8/8/8/8/R3K2R w - - 0 1"));
+        Assertions.assertNull(probe("4k3/8/8/8/8/8/8/4K2R w K - 0 1"));
+        Assertions.assertEquals(new TablebaseResult(TablebaseResult.Outcome.DRAW, 0),
+                probe("4k3/8/8/8/8/8/8/4K3 w - - 0 1"));
+    }
+
+    @Test
+    public void bestMoveMatesFastest() throws InvalidFenException {
+        ChessGame game = ChessGame.fromFen("k7/8/1K6/8/8/8/7Q/8 w - - 0 1");
+        Assertions.assertEquals(new ChessMove(ChessPosition.of(2, 8), ChessPosition.of(8, 8), null),
+                tablebase.bestMove(game));
+
+        Engine engine = new Engine(1);
+        engine.setTablebase(tablebase);
+        SearchResult result = engine.search(ChessGame.fromFen("8/8/8/8/8/2k5/8/R3K3 w - - 0 1"),
+                SearchLimits.depth(3));
+        Assertions.assertEquals(Engine.MATE_SCORE - probe("8/8/8/8/8/2k5/8/R3K3 w - - 0 1").pliesToMate(),
+                result.score());
+    }
+
+    @Test
+    public void drawnEndgamesEndTheGame() throws InvalidFenException {
+        // The lone king can't be driven out of the corner in front of a rook's pawn
+        ChessGame drawn = ChessGame.fromFen("k7/8/8/8/8/8/P7/K7 w - - 0 1");
+        Assertions.assertEquals(GameStatus.Result.DEAD_POSITION, drawn.getStatus(tablebase).getResult());
+        Assertions.assertEquals(GameStatus.Result.IN_PROGRESS, drawn.getStatus().getResult());
+
+        ChessGame won = ChessGame.fromFen("4k3/8/4K3/4P3/8/8/8/8 w - - 0 1");
+        Assertions.assertEquals(GameStatus.Result.IN_PROGRESS, won.getStatus(tablebase).getResult());
+    }
+
+    private static TablebaseResult probe(String fen) throws InvalidFenException {
+        return tablebase.probe(ChessGame.fromFen(fen));
+    }
+}